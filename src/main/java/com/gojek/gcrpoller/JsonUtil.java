@@ -17,19 +17,31 @@
 
 package com.gojek.gcrpoller;
 
+import com.gojek.gcrpoller.message.MessageTypeAdapterFactory;
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 public class JsonUtil {
 
+    private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+    // Gson instances are thread safe and cache the adapters of the types they have seen, so they
+    // are shared by all requests. Plugin messages use hand written adapters instead of reflection.
+    private static final Gson serializer = new GsonBuilder()
+            .setDateFormat(DATE_FORMAT)
+            .excludeFieldsWithoutExposeAnnotation()
+            .registerTypeAdapterFactory(new MessageTypeAdapterFactory())
+            .create();
+    private static final Gson deserializer = new GsonBuilder()
+            .setDateFormat(DATE_FORMAT)
+            .registerTypeAdapterFactory(new MessageTypeAdapterFactory())
+            .create();
+
     public static String toJsonString(Object object) {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.excludeFieldsWithoutExposeAnnotation().create().toJson(object);
+        return serializer.toJson(object);
     }
 
     public static <T> T fromJsonString(String json, Class<T> type) {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        return gsonBuilder.create().fromJson(json, type);
+        return deserializer.fromJson(json, type);
     }
-}
\ No newline at end of file
+}
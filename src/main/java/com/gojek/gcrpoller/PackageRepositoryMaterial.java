@@ -21,9 +21,20 @@ import static com.gojek.gcrpoller.JsonUtil.fromJsonString;
 import static com.gojek.gcrpoller.JsonUtil.toJsonString;
 import static com.thoughtworks.go.plugin.api.response.DefaultGoPluginApiResponse.success;
 
+import com.gojek.gcrpoller.gcr.AsyncRegistryTransport;
 import com.gojek.gcrpoller.gcr.GcrClient;
 import com.gojek.gcrpoller.gcr.GcrPoller;
 import com.gojek.gcrpoller.gcr.GoogleCredentialService;
+import com.gojek.gcrpoller.gcr.PollScheduler;
+import com.gojek.gcrpoller.gcr.PollerSettings;
+import com.gojek.gcrpoller.gcr.RegistryCircuitBreaker;
+import com.gojek.gcrpoller.gcr.RegistryRateLimiter;
+import com.gojek.gcrpoller.gcr.RegistryTokenCache;
+import com.gojek.gcrpoller.gcr.RegistryTransport;
+import com.gojek.gcrpoller.gcr.RequestHedger;
+import com.gojek.gcrpoller.gcr.RetryPolicy;
+import com.gojek.gcrpoller.gcr.TokenRefresher;
+import com.gojek.gcrpoller.gcr.TransportSettings;
 import com.gojek.gcrpoller.message.CheckConnectionResultMessage;
 import com.gojek.gcrpoller.message.LatestPackageRevisionMessage;
 import com.gojek.gcrpoller.message.LatestPackageRevisionSinceMessage;
@@ -63,13 +74,32 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
   public static final String REQUEST_LATEST_PACKAGE_REVISION_SINCE = "latest-revision-since";
   private final GcrPoller packageRepositoryPoller;
   private final GoogleCredentialService googleCredentialService;
+  private final TokenRefresher tokenRefresher;
+  private final PollScheduler pollScheduler;
   private Map<String, MessageHandler> handlerMap = new LinkedHashMap<>();
   private PackageRepositoryConfigurationProvider configurationProvider;
 
   public PackageRepositoryMaterial() {
     configurationProvider = new PackageRepositoryConfigurationProvider();
-    packageRepositoryPoller = new GcrPoller(new GcrClient());
+    RegistryTokenCache registryTokenCache = new RegistryTokenCache();
+    TransportSettings transportSettings = TransportSettings.fromSystemProperties();
+    GcrClient gcrClient =
+        new GcrClient(
+            new RegistryTransport(transportSettings),
+            RegistryRateLimiter.from(transportSettings),
+            RetryPolicy.from(transportSettings),
+            RegistryCircuitBreaker.from(transportSettings),
+            RequestHedger.from(transportSettings),
+            new AsyncRegistryTransport(transportSettings));
+    PollerSettings pollerSettings = PollerSettings.fromSystemProperties();
     googleCredentialService = new GoogleCredentialService();
+    packageRepositoryPoller =
+        new GcrPoller(gcrClient, registryTokenCache, pollerSettings, googleCredentialService);
+    tokenRefresher = new TokenRefresher(googleCredentialService, registryTokenCache);
+    tokenRefresher.start();
+    pollScheduler =
+        new PollScheduler(packageRepositoryPoller, googleCredentialService, pollerSettings);
+    pollScheduler.start();
     handlerMap.put(REQUEST_REPOSITORY_CONFIGURATION, repositoryConfigurationsMessageHandler());
     handlerMap.put(REQUEST_PACKAGE_CONFIGURATION, packageConfigurationMessageHandler());
     handlerMap.put(
@@ -205,6 +235,7 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
             repositoryConfig.getProperty(PluginConfigurations.GCP_SERVICE_ACCOUNT).value();
         GoogleCredentials gcrCredential =
             googleCredentialService.getGcrCredential(jsonServiceAccount);
+        pollScheduler.register(message.getPackageConfiguration(), repositoryConfig);
         PackageRevisionMessage revision =
             packageRepositoryPoller.getLatestRevision(
                 message.getPackageConfiguration(),
@@ -226,6 +257,7 @@ public class PackageRepositoryMaterial extends AbstractGoPlugin {
             repositoryConfig.getProperty(PluginConfigurations.GCP_SERVICE_ACCOUNT).value();
         GoogleCredentials gcrCredential =
             googleCredentialService.getGcrCredential(jsonServiceAccount);
+        pollScheduler.register(message.getPackageConfiguration(), repositoryConfig);
         PackageRevisionMessage revision =
             packageRepositoryPoller.getLatestRevisionSince(
                 message.getPackageConfiguration(),
@@ -15,27 +15,12 @@
  *    limitations under the License.
  */
 
-package com.gojek.gcrpoller.util;
+package com.gojek.gcrpoller.exception;
 
-import com.google.gson.Gson;
-import com.mashape.unirest.http.ObjectMapper;
+/** A registry poll was rejected because the bulkhead of its registry is full. */
+public class BulkheadFullException extends RegistryUnavailableException {
 
-public class GsonObjectMapper implements ObjectMapper {
-  private Gson gson = new Gson();
-
-  public <T> T readValue(String s, Class<T> aClass) {
-    try {
-      return gson.fromJson(s, aClass);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
-  }
-
-  public String writeValue(Object o) {
-    try {
-      return gson.toJson(o);
-    } catch (Exception e) {
-      throw new RuntimeException(e);
-    }
+  public BulkheadFullException(String message) {
+    super(message);
   }
 }
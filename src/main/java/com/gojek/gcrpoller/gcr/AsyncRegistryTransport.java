@@ -0,0 +1,169 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.exception.PollerException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+
+/**
+ * Non-blocking HTTP transport used to talk to the registries, with the same pooling, keep-alive
+ * and timeouts as {@link RegistryTransport}. Responses are buffered in memory and completed on the
+ * I/O dispatch threads, so callers should not block in their completion stages. The I/O reactor is
+ * only started when the first request is sent.
+ */
+public class AsyncRegistryTransport implements Closeable {
+  private final TransportSettings settings;
+  private RequestConfig requestConfig;
+  private CloseableHttpAsyncClient httpClient;
+  private boolean closed;
+
+  public AsyncRegistryTransport() {
+    this(new TransportSettings());
+  }
+
+  public AsyncRegistryTransport(TransportSettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Send a GET request.
+   *
+   * @param url request url
+   * @param headers request headers
+   * @return the response, or a future failed with an {@link IOException} on connection failures
+   */
+  public CompletableFuture<HttpResponse> get(String url, Map<String, String> headers) {
+    return get(url, headers, Long.MAX_VALUE);
+  }
+
+  /**
+   * Send a GET request whose connect, connection lease and socket timeouts are capped at {@code
+   * timeoutMs}, so that an attempt cannot outlive the deadline of its request.
+   */
+  public CompletableFuture<HttpResponse> get(
+      String url, Map<String, String> headers, long timeoutMs) {
+    HttpGet request = new HttpGet(url);
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      request.setHeader(header.getKey(), header.getValue());
+    }
+    CloseableHttpAsyncClient client = httpClient();
+    request.setConfig(RegistryTransport.capTimeouts(requestConfig, timeoutMs));
+    CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+    client
+        .execute(
+            request,
+            new FutureCallback<HttpResponse>() {
+              @Override
+              public void completed(HttpResponse response) {
+                future.complete(response);
+              }
+
+              @Override
+              public void failed(Exception e) {
+                future.completeExceptionally(e);
+              }
+
+              @Override
+              public void cancelled() {
+                future.cancel(false);
+              }
+            });
+    return future;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    if (httpClient != null) {
+      httpClient.close();
+    }
+  }
+
+  private synchronized CloseableHttpAsyncClient httpClient() {
+    if (closed) {
+      throw new PollerException("Registry transport is closed");
+    }
+    if (httpClient == null) {
+      httpClient = createHttpClient();
+      httpClient.start();
+    }
+    return httpClient;
+  }
+
+  private CloseableHttpAsyncClient createHttpClient() {
+    IOReactorConfig reactorConfig =
+        IOReactorConfig.custom()
+            .setConnectTimeout(settings.getConnectTimeoutMs())
+            .setSoTimeout(settings.getReadTimeoutMs())
+            .build();
+    Registry<SchemeIOSessionStrategy> sessionStrategies =
+        RegistryBuilder.<SchemeIOSessionStrategy>create()
+            .register("http", NoopIOSessionStrategy.INSTANCE)
+            .register("https", new SSLIOSessionStrategy(SSLContexts.createDefault()))
+            .build();
+    PoolingNHttpClientConnectionManager connectionManager;
+    try {
+      connectionManager =
+          new PoolingNHttpClientConnectionManager(
+              new DefaultConnectingIOReactor(reactorConfig),
+              null,
+              sessionStrategies,
+              null,
+              null,
+              settings.getConnectionTimeToLiveMs(),
+              TimeUnit.MILLISECONDS);
+    } catch (IOReactorException e) {
+      throw new PollerException("Unable to start registry transport", e);
+    }
+    connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerHost());
+    connectionManager.setMaxTotal(settings.getMaxConnectionsTotal());
+
+    requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(settings.getConnectTimeoutMs())
+            .setConnectionRequestTimeout(settings.getConnectTimeoutMs())
+            .setSocketTimeout(settings.getReadTimeoutMs())
+            .build();
+
+    return HttpAsyncClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy(RegistryTransport.keepAliveStrategy(settings.getKeepAliveMs()))
+        .build();
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import lombok.Value;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
+/** Validators of a registry response, used to send conditional requests. */
+@Value
+public class CacheValidator {
+  String etag;
+  String lastModified;
+
+  /**
+   * Read the validators of a response.
+   *
+   * @param response registry response
+   * @return the validators, or null if the response has neither an ETag nor a Last-Modified header
+   */
+  static CacheValidator from(HttpResponse response) {
+    String etag = headerValue(response, "ETag");
+    String lastModified = headerValue(response, "Last-Modified");
+    if (etag == null && lastModified == null) {
+      return null;
+    }
+    return new CacheValidator(etag, lastModified);
+  }
+
+  private static String headerValue(HttpResponse response, String name) {
+    Header header = response.getFirstHeader(name);
+    return header == null ? null : header.getValue();
+  }
+}
@@ -19,39 +19,145 @@ package com.gojek.gcrpoller.gcr;
 
 import com.gojek.gcrpoller.exception.InvalidCredentialException;
 import com.gojek.gcrpoller.exception.PollerException;
-import com.gojek.gcrpoller.util.GsonObjectMapper;
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.thoughtworks.go.plugin.api.logging.Logger;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
 
-public class GcrClient {
+public class GcrClient implements Closeable {
   private static final Logger logger = Logger.getLoggerFor(GcrClient.class);
 
   private static final String GET_CATALOG_TOKEN_PATH =
-      "http://%s/v2/token?service=gcr.io&service={registry_url}&scope=registry:catalog:*";
+      "http://%s/v2/token?service=gcr.io&service=%s&scope=registry:catalog:*";
   private static final String GET_TOKEN_PATH =
-      "http://%s/v2/token?service={registry_url}&scope=repository:{project}/{image_name}:pull";
-  private static final String GET_IMAGE_LIST_PATH = "http://%s/v2/{project}/{image_name}/tags/list";
+      "http://%s/v2/token?service=%s&scope=repository:%s/%s:pull";
+  private static final String GET_IMAGE_LIST_PATH = "http://%s/v2/%s/%s/tags/list";
+  private static final String GET_IMAGE_LIST_PAGE_PATH = GET_IMAGE_LIST_PATH + "?n=%d";
+  private static final Pattern NEXT_LINK = Pattern.compile("<([^>]*)>\\s*;[^,]*rel=\"?next\"?");
+
+  private static final Gson gson = new Gson();
+  // token requests are not hedged, only tags/list requests, whose latency grows with the image
+  private static final RequestHedger NO_HEDGING = RequestHedger.disabled();
+
+  private final RegistryTransport transport;
+  private final RegistryRateLimiter rateLimiter;
+  private final RetryPolicy retryPolicy;
+  private final RegistryCircuitBreaker circuitBreaker;
+  private final RequestHedger hedger;
+  private final AsyncRegistryTransport asyncTransport;
+  private ScheduledExecutorService delayScheduler;
+  private ExecutorService responseExecutor;
 
   public GcrClient() {
-    Unirest.setObjectMapper(new GsonObjectMapper());
+    this(new RegistryTransport());
+  }
+
+  public GcrClient(RegistryTransport transport) {
+    this(transport, RegistryRateLimiter.unlimited());
+  }
+
+  public GcrClient(RegistryTransport transport, RegistryRateLimiter rateLimiter) {
+    this(transport, rateLimiter, RetryPolicy.from(new TransportSettings()));
+  }
+
+  public GcrClient(
+      RegistryTransport transport, RegistryRateLimiter rateLimiter, RetryPolicy retryPolicy) {
+    this(
+        transport,
+        rateLimiter,
+        retryPolicy,
+        RegistryCircuitBreaker.from(new TransportSettings()));
+  }
+
+  public GcrClient(
+      RegistryTransport transport,
+      RegistryRateLimiter rateLimiter,
+      RetryPolicy retryPolicy,
+      RegistryCircuitBreaker circuitBreaker) {
+    this(transport, rateLimiter, retryPolicy, circuitBreaker, RequestHedger.disabled());
+  }
+
+  public GcrClient(
+      RegistryTransport transport,
+      RegistryRateLimiter rateLimiter,
+      RetryPolicy retryPolicy,
+      RegistryCircuitBreaker circuitBreaker,
+      RequestHedger hedger) {
+    this(
+        transport,
+        rateLimiter,
+        retryPolicy,
+        circuitBreaker,
+        hedger,
+        new AsyncRegistryTransport(new TransportSettings()));
+  }
+
+  public GcrClient(
+      RegistryTransport transport,
+      RegistryRateLimiter rateLimiter,
+      RetryPolicy retryPolicy,
+      RegistryCircuitBreaker circuitBreaker,
+      RequestHedger hedger,
+      AsyncRegistryTransport asyncTransport) {
+    this.transport = transport;
+    this.asyncTransport = asyncTransport;
+    this.rateLimiter = rateLimiter;
+    this.retryPolicy = retryPolicy;
+    this.circuitBreaker = circuitBreaker;
+    this.hedger = hedger;
+  }
+
+  public RegistryRateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  public RegistryCircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public RequestHedger getHedger() {
+    return hedger;
   }
 
   public Token getCatalogAccessToken(String registryUrl, String token) {
-    HttpResponse<Token> response;
+    RegistryResponse<Token> response;
     try {
       response =
-          Unirest.get(String.format(GET_CATALOG_TOKEN_PATH, registryUrl))
-              .header("Authorization", formatBearerToken(token))
-              .routeParam("registry_url", registryUrl)
-              .asObject(Token.class);
+          get(
+              String.format(GET_CATALOG_TOKEN_PATH, registryUrl, encode(registryUrl)),
+              token,
+              Token.class);
       if (!isSuccess(response.getStatus())) {
         throw new InvalidCredentialException(
             "Invalid status code while getting GCR token = " + response.getStatus());
       }
 
-    } catch (UnirestException e) {
+    } catch (IOException e) {
       logger.error("Unable to get GCR token", e);
       throw new InvalidCredentialException("Unable to get GCR token");
     }
@@ -62,13 +168,16 @@ public class GcrClient {
   public Token getImageAccessToken(
       String registryUrl, String project, String imageName, String token) {
     try {
-      HttpResponse<Token> response =
-          Unirest.get(String.format(GET_TOKEN_PATH, registryUrl))
-              .header("Authorization", formatBearerToken(token))
-              .routeParam("registry_url", registryUrl)
-              .routeParam("project", project)
-              .routeParam("image_name", imageName)
-              .asObject(Token.class);
+      RegistryResponse<Token> response =
+          get(
+              String.format(
+                  GET_TOKEN_PATH,
+                  registryUrl,
+                  encode(registryUrl),
+                  encode(project),
+                  encode(imageName)),
+              token,
+              Token.class);
 
       if (!isSuccess(response.getStatus())) {
         throw new InvalidCredentialException(
@@ -76,7 +185,7 @@ public class GcrClient {
       }
 
       return response.getBody();
-    } catch (UnirestException e) {
+    } catch (IOException e) {
       logger.error("Unable to get GCR token", e);
       throw new InvalidCredentialException("Unable to get GCR token");
     }
@@ -84,30 +193,576 @@ public class GcrClient {
 
   public ImageTags getImageTags(
       String registryUrl, String project, String imageName, String token) {
-    HttpResponse<ImageTags> response;
+    return getImageTags(registryUrl, project, imageName, token, null).getBody();
+  }
+
+  /**
+   * Get the tags of an image, conditionally if validators of an earlier response are given.
+   *
+   * @param registryUrl registry url
+   * @param project GCP project
+   * @param imageName image name
+   * @param token registry token
+   * @param validator validators of the previous response, or null
+   * @return the response, which is not modified (304) without a body if the tags have not changed
+   *     since the previous response
+   */
+  public RegistryResponse<ImageTags> getImageTags(
+      String registryUrl,
+      String project,
+      String imageName,
+      String token,
+      CacheValidator validator) {
+    String url =
+        String.format(GET_IMAGE_LIST_PATH, registryUrl, encode(project), encode(imageName));
+    RegistryResponse<ImageTags> response;
     try {
       response =
-          Unirest.get(String.format(GET_IMAGE_LIST_PATH, registryUrl))
-              .header("Authorization", formatBearerToken(token))
-              .routeParam("project", project)
-              .routeParam("image_name", imageName)
-              .asObject(ImageTags.class);
-      if (!isSuccess(response.getStatus())) {
+          get(url, token, conditionalHeaders(validator), bodyReader(ImageTags.class), hedger);
+      if (!isSuccess(response.getStatus()) && !response.isNotModified()) {
+        throw new PollerException(
+            "Invalid status code while getting image list = " + response.getStatus());
+      }
+      return response;
+    } catch (IOException e) {
+      logger.error("Unable to get image list " + registryUrl, e);
+      throw new PollerException("Unable to get image list");
+    }
+  }
+
+  /**
+   * Asynchronous {@link #getImageAccessToken}. The returned future fails with an {@link
+   * InvalidCredentialException} when the registry refuses the token.
+   */
+  public CompletableFuture<Token> getImageAccessTokenAsync(
+      String registryUrl, String project, String imageName, String token) {
+    String url =
+        String.format(
+            GET_TOKEN_PATH, registryUrl, encode(registryUrl), encode(project), encode(imageName));
+    return getAsync(url, token, Collections.<String, String>emptyMap(), bodyReader(Token.class))
+        .handle(
+            (response, error) -> {
+              if (error != null) {
+                logger.error("Unable to get GCR token", unwrap(error));
+                throw new InvalidCredentialException("Unable to get GCR token");
+              }
+              if (!isSuccess(response.getStatus())) {
+                throw new InvalidCredentialException(
+                    "Invalid status code while getting GCR token = " + response.getStatus());
+              }
+              return response.getBody();
+            });
+  }
+
+  /** Asynchronous {@link #getImageTags(String, String, String, String)}. */
+  public CompletableFuture<ImageTags> getImageTagsAsync(
+      String registryUrl, String project, String imageName, String token) {
+    return getImageTagsAsync(registryUrl, project, imageName, token, null)
+        .thenApply(RegistryResponse::getBody);
+  }
+
+  /**
+   * Asynchronous {@link #getImageTags(String, String, String, String, CacheValidator)}. The
+   * returned future fails with a {@link PollerException} when the tags cannot be fetched. Requests
+   * are not hedged, since a slow request does not hold up a thread here.
+   */
+  public CompletableFuture<RegistryResponse<ImageTags>> getImageTagsAsync(
+      String registryUrl,
+      String project,
+      String imageName,
+      String token,
+      CacheValidator validator) {
+    String url =
+        String.format(GET_IMAGE_LIST_PATH, registryUrl, encode(project), encode(imageName));
+    return getAsync(url, token, conditionalHeaders(validator), bodyReader(ImageTags.class))
+        .handle(
+            (response, error) -> {
+              if (error != null) {
+                Throwable cause = unwrap(error);
+                if (cause instanceof PollerException) {
+                  throw (PollerException) cause;
+                }
+                logger.error("Unable to get image list " + registryUrl, cause);
+                throw new PollerException("Unable to get image list");
+              }
+              if (!isSuccess(response.getStatus()) && !response.isNotModified()) {
+                throw new PollerException(
+                    "Invalid status code while getting image list = " + response.getStatus());
+              }
+              return response;
+            });
+  }
+
+  /**
+   * Get one page of the tags of an image, using the {@code n} parameter and {@code Link} header
+   * pagination of the Docker registry API.
+   *
+   * @param registryUrl registry url
+   * @param project GCP project
+   * @param imageName image name
+   * @param token registry token
+   * @param pageSize maximum number of entries per page
+   * @param nextLink {@link RegistryResponse#getNextLink()} of the previous page, or null for the
+   *     first page
+   * @return the page, whose next link is null if it is the last page
+   */
+  public RegistryResponse<ImageTags> getImageTagsPage(
+      String registryUrl,
+      String project,
+      String imageName,
+      String token,
+      int pageSize,
+      String nextLink) {
+    String url =
+        nextLink == null
+            ? String.format(
+                GET_IMAGE_LIST_PAGE_PATH, registryUrl, encode(project), encode(imageName), pageSize)
+            : resolve(registryUrl, nextLink);
+    RegistryResponse<ImageTags> response;
+    try {
+      response =
+          get(
+              url,
+              token,
+              Collections.<String, String>emptyMap(),
+              bodyReader(ImageTags.class),
+              hedger);
+      if (!isSuccess(response.getStatus()) || response.getBody() == null) {
+        throw new PollerException(
+            "Invalid status code while getting image list = " + response.getStatus());
+      }
+      return response;
+    } catch (IOException e) {
+      logger.error("Unable to get image list " + registryUrl, e);
+      throw new PollerException("Unable to get image list");
+    }
+  }
+
+  /**
+   * Get the latest image matching a tag filter, selected while streaming the tags/list response.
+   *
+   * @param registryUrl registry url
+   * @param project GCP project
+   * @param imageName image name
+   * @param token registry token
+   * @param tagFilter tag filter
+   * @return the latest matching image, or an image with tag {@link ImageTag#NO_IMAGE_FOUND}
+   */
+  public ImageTag getLatestImageTag(
+      String registryUrl, String project, String imageName, String token, TagFilter tagFilter) {
+    RegistryResponse<ImageTag> response;
+    try {
+      response =
+          get(
+              String.format(GET_IMAGE_LIST_PATH, registryUrl, encode(project), encode(imageName)),
+              token,
+              Collections.<String, String>emptyMap(),
+              // readers keep state while reading, and a hedge reads at the same time
+              reader -> new LatestImageTagReader(tagFilter).read(reader),
+              hedger);
+      if (!isSuccess(response.getStatus()) || response.getBody() == null) {
         throw new PollerException(
             "Invalid status code while getting image list = " + response.getStatus());
       }
       return response.getBody();
-    } catch (UnirestException e) {
-      logger.error("Unable to get image list {}", registryUrl, e);
+    } catch (IOException e) {
+      logger.error("Unable to get image list " + registryUrl, e);
       throw new PollerException("Unable to get image list");
     }
   }
 
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (delayScheduler != null) {
+        delayScheduler.shutdownNow();
+      }
+      if (responseExecutor != null) {
+        responseExecutor.shutdownNow();
+      }
+    }
+    hedger.close();
+    asyncTransport.close();
+    transport.close();
+  }
+
+  private <T> RegistryResponse<T> get(String url, String token, Class<T> type)
+      throws IOException {
+    return get(url, token, type, Collections.<String, String>emptyMap());
+  }
+
+  private <T> RegistryResponse<T> get(
+      String url, String token, Class<T> type, Map<String, String> extraHeaders)
+      throws IOException {
+    return get(url, token, extraHeaders, bodyReader(type), NO_HEDGING);
+  }
+
+  private static <T> BodyReader<T> bodyReader(Class<T> type) {
+    return reader -> gson.fromJson(reader, type);
+  }
+
+  /**
+   * Send a request, retrying IO errors and retryable statuses according to the {@link
+   * RetryPolicy}. The last response or error is returned once the request must not be retried.
+   * Slow attempts are hedged by the given hedger.
+   */
+  private <T> RegistryResponse<T> get(
+      String url,
+      String token,
+      Map<String, String> extraHeaders,
+      BodyReader<T> bodyReader,
+      RequestHedger hedger)
+      throws IOException {
+    Map<String, String> headers = new HashMap<>(extraHeaders);
+    headers.put("Authorization", formatBearerToken(token));
+    String host = URI.create(url).getAuthority();
+    long deadline = retryPolicy.deadline();
+    for (int attempt = 1; ; attempt++) {
+      long backoffMs;
+      try {
+        RegistryResponse<T> response = send(url, host, headers, bodyReader, deadline, hedger);
+        if (!retryPolicy.isRetryable(response.getStatus())) {
+          return response;
+        }
+        backoffMs = retryPolicy.backoffMs(attempt, deadline);
+        if (backoffMs < 0) {
+          return response;
+        }
+        logger.warn(
+            String.format(
+                "Retrying request to %s after status %d in %dms",
+                host,
+                response.getStatus(),
+                backoffMs));
+      } catch (IOException e) {
+        backoffMs = retryPolicy.backoffMs(attempt, deadline);
+        if (backoffMs < 0) {
+          throw e;
+        }
+        logger.warn(String.format("Retrying request to %s after %s in %dms", host, e, backoffMs));
+      }
+      try {
+        TimeUnit.MILLISECONDS.sleep(backoffMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting to retry request");
+      }
+    }
+  }
+
+  private <T> RegistryResponse<T> send(
+      String url,
+      String host,
+      Map<String, String> headers,
+      BodyReader<T> bodyReader,
+      long deadline,
+      RequestHedger hedger)
+      throws IOException {
+    // waits and rejections of the rate limiter are not the registry's doing, so they are neither
+    // timed nor recorded by the breaker
+    rateLimiter.acquire(host);
+    long remainingMs = RetryPolicy.remainingMs(deadline);
+    if (remainingMs <= 0) {
+      throw deadlineExceeded(host);
+    }
+    circuitBreaker.acquirePermission(host);
+    long startNanos = System.nanoTime();
+    boolean failed = true;
+    try {
+      RegistryResponse<T> registryResponse =
+          hedger.call(
+              host,
+              attempt ->
+                  transport.get(
+                      url,
+                      headers,
+                      response -> {
+                        attempt.onResponse();
+                        rateLimiter.onResponse(host, response);
+                        return toRegistryResponse(response, bodyReader);
+                      },
+                      remainingMs,
+                      attempt::onSend),
+              response -> isSuccess(response.getStatus()) || response.isNotModified());
+      failed = registryResponse.getStatus() >= 500;
+      return registryResponse;
+    } finally {
+      circuitBreaker.record(
+          host, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+  }
+
+  /**
+   * Send a request without blocking, retrying like {@link #get(String, String, Map, BodyReader,
+   * RequestHedger)}.
+   * Backoffs and rate limiter waits are scheduled instead of slept.
+   */
+  private <T> CompletableFuture<RegistryResponse<T>> getAsync(
+      String url, String token, Map<String, String> extraHeaders, BodyReader<T> bodyReader) {
+    Map<String, String> headers = new HashMap<>(extraHeaders);
+    headers.put("Authorization", formatBearerToken(token));
+    String host = URI.create(url).getAuthority();
+    return attemptAsync(url, host, headers, bodyReader, 1, retryPolicy.deadline());
+  }
+
+  private <T> CompletableFuture<RegistryResponse<T>> attemptAsync(
+      String url,
+      String host,
+      Map<String, String> headers,
+      BodyReader<T> bodyReader,
+      int attempt,
+      long deadline) {
+    CompletableFuture<RegistryResponse<T>> result = new CompletableFuture<>();
+    sendAsync(url, host, headers, bodyReader, deadline)
+        .whenComplete(
+            (response, error) -> {
+              Throwable cause = unwrap(error);
+              if (cause != null && !(cause instanceof IOException)) {
+                result.completeExceptionally(cause);
+                return;
+              }
+              if (cause == null && !retryPolicy.isRetryable(response.getStatus())) {
+                result.complete(response);
+                return;
+              }
+              long backoffMs = retryPolicy.backoffMs(attempt, deadline);
+              if (backoffMs < 0) {
+                if (cause != null) {
+                  result.completeExceptionally(cause);
+                } else {
+                  result.complete(response);
+                }
+                return;
+              }
+              logger.warn(
+                  String.format(
+                      "Retrying request to %s after %s in %dms",
+                      host,
+                      cause != null ? cause : "status " + response.getStatus(),
+                      backoffMs));
+              delay(backoffMs)
+                  .thenCompose(
+                      ignored -> attemptAsync(url, host, headers, bodyReader, attempt + 1, deadline))
+                  .whenComplete(
+                      (retried, retryError) -> {
+                        if (retryError != null) {
+                          result.completeExceptionally(unwrap(retryError));
+                        } else {
+                          result.complete(retried);
+                        }
+                      });
+            });
+    return result;
+  }
+
+  private <T> CompletableFuture<RegistryResponse<T>> sendAsync(
+      String url,
+      String host,
+      Map<String, String> headers,
+      BodyReader<T> bodyReader,
+      long deadline) {
+    long waitMs;
+    try {
+      // waits and rejections of the rate limiter are not the registry's doing, so they are
+      // neither timed nor recorded by the breaker
+      waitMs = rateLimiter.reserve(host);
+    } catch (RuntimeException e) {
+      return failed(e);
+    }
+    return delay(waitMs)
+        .thenCompose(ignored -> sendNowAsync(url, host, headers, bodyReader, deadline));
+  }
+
+  /**
+   * Send a request whose rate limiter wait is over. Responses are read on the client's response
+   * threads rather than the I/O dispatch threads, and so are the stages that callers chain on them.
+   */
+  private <T> CompletableFuture<RegistryResponse<T>> sendNowAsync(
+      String url,
+      String host,
+      Map<String, String> headers,
+      BodyReader<T> bodyReader,
+      long deadline) {
+    long remainingMs = RetryPolicy.remainingMs(deadline);
+    if (remainingMs <= 0) {
+      return failed(deadlineExceeded(host));
+    }
+    try {
+      circuitBreaker.acquirePermission(host);
+    } catch (RuntimeException e) {
+      return failed(e);
+    }
+    long startNanos = System.nanoTime();
+    CompletableFuture<RegistryResponse<T>> sent;
+    try {
+      sent =
+          asyncTransport
+              .get(url, headers, remainingMs)
+              .thenApplyAsync(
+                  response -> {
+                    rateLimiter.onResponse(host, response);
+                    try {
+                      return toRegistryResponse(response, bodyReader);
+                    } catch (IOException e) {
+                      throw new CompletionException(e);
+                    }
+                  },
+                  responseExecutor());
+    } catch (RuntimeException e) {
+      sent = failed(e);
+    }
+    CompletableFuture<RegistryResponse<T>> result = new CompletableFuture<>();
+    sent.whenComplete(
+        (response, error) -> {
+          circuitBreaker.record(
+              host,
+              error != null || response.getStatus() >= 500,
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+          if (error != null) {
+            result.completeExceptionally(unwrap(error));
+          } else {
+            result.complete(response);
+          }
+        });
+    return result;
+  }
+
+  private static <T> CompletableFuture<T> failed(Throwable error) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(error);
+    return future;
+  }
+
+  private static SocketTimeoutException deadlineExceeded(String host) {
+    return new SocketTimeoutException("Deadline of request to " + host + " has passed");
+  }
+
+  /** A future completed after a delay, on the client's scheduler thread. */
+  private CompletableFuture<Void> delay(long delayMs) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    if (delayMs <= 0) {
+      future.complete(null);
+      return future;
+    }
+    delayScheduler().schedule(() -> future.complete(null), delayMs, TimeUnit.MILLISECONDS);
+    return future;
+  }
+
+  private synchronized ScheduledExecutorService delayScheduler() {
+    if (delayScheduler == null) {
+      delayScheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "gcr-poller-async-delay");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    return delayScheduler;
+  }
+
+  /** Threads that read asynchronous responses, which is CPU bound once they are buffered. */
+  private synchronized ExecutorService responseExecutor() {
+    if (responseExecutor == null) {
+      responseExecutor =
+          Executors.newFixedThreadPool(
+              Runtime.getRuntime().availableProcessors(),
+              runnable -> {
+                Thread thread = new Thread(runnable, "gcr-poller-async-response");
+                thread.setDaemon(true);
+                return thread;
+              });
+    }
+    return responseExecutor;
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null
+        ? error.getCause()
+        : error;
+  }
+
+  private static <T> RegistryResponse<T> toRegistryResponse(
+      HttpResponse response, BodyReader<T> bodyReader) throws IOException {
+    int status = response.getStatusLine().getStatusCode();
+    CacheValidator validator = CacheValidator.from(response);
+    HttpEntity entity = response.getEntity();
+    if (!isSuccess(status) || entity == null) {
+      EntityUtils.consume(entity);
+      return new RegistryResponse<>(status, null, validator, nextLink(response));
+    }
+    try (Reader reader = new InputStreamReader(entity.getContent(), Charsets.UTF_8)) {
+      return new RegistryResponse<>(status, bodyReader.read(reader), validator, nextLink(response));
+    } catch (JsonParseException e) {
+      // gson wraps errors of the connection, like timeouts while the body is read
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static Map<String, String> conditionalHeaders(CacheValidator validator) {
+    Map<String, String> headers = new HashMap<>();
+    if (validator != null && validator.getEtag() != null) {
+      headers.put("If-None-Match", validator.getEtag());
+    }
+    if (validator != null && validator.getLastModified() != null) {
+      headers.put("If-Modified-Since", validator.getLastModified());
+    }
+    return headers;
+  }
+
+  static String nextLink(HttpResponse response) {
+    for (Header header : response.getHeaders("Link")) {
+      Matcher matcher = NEXT_LINK.matcher(header.getValue());
+      if (matcher.find()) {
+        return matcher.group(1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Links are usually relative to the registry, e.g. {@code /v2/project/image/tags/list?...}.
+   * Absolute links are only followed to the registry itself, since page requests carry its token.
+   */
+  static String resolve(String registryUrl, String link) {
+    URI uri;
+    try {
+      uri = new URI(link);
+    } catch (URISyntaxException e) {
+      throw new PollerException("Invalid next link of image list: " + link);
+    }
+    if (uri.isAbsolute() && !registryUrl.equalsIgnoreCase(uri.getRawAuthority())) {
+      throw new PollerException("Next link of image list leaves registry " + registryUrl);
+    }
+    String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+    return String.format(
+        "http://%s%s%s%s",
+        registryUrl,
+        path.startsWith("/") ? "" : "/",
+        path,
+        uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private interface BodyReader<T> {
+    T read(Reader reader) throws IOException;
+  }
+
   private String formatBearerToken(String token) {
     return String.format("Bearer %s", token);
   }
 
-  private boolean isSuccess(int status) {
+  private static boolean isSuccess(int status) {
     return status >= 200 && status < 300;
   }
 }
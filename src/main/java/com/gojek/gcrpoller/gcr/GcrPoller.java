@@ -18,27 +18,122 @@
 package com.gojek.gcrpoller.gcr;
 
 import com.gojek.gcrpoller.PluginConfigurations;
+import com.gojek.gcrpoller.exception.PollerException;
+import com.gojek.gcrpoller.exception.RegistryUnavailableException;
 import com.gojek.gcrpoller.message.CheckConnectionResultMessage;
 import com.gojek.gcrpoller.message.CheckConnectionResultMessage.STATUS;
 import com.gojek.gcrpoller.message.PackageMaterialProperties;
 import com.gojek.gcrpoller.message.PackageMaterialProperty;
 import com.gojek.gcrpoller.message.PackageRevisionMessage;
+import com.gojek.gcrpoller.util.LruCache;
+import com.gojek.gcrpoller.util.SingleFlight;
+import com.gojek.gcrpoller.util.VirtualThreads;
 import com.google.common.base.Strings;
 import com.thoughtworks.go.plugin.api.logging.Logger;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.Value;
 
 public class GcrPoller {
 
-  private static final String NO_IMAGE_FOUND = "";
+  private static final int MAX_TAGS_LIST_PAGES = 1000;
+  private static final int KNOWN_IMAGE_CACHE_SIZE = 1024;
   private final Logger logger = Logger.getLoggerFor(GcrPoller.class);
   private final GcrClient gcrClient;
+  private final RegistryTokenCache tokenCache;
+  private final PollerSettings settings;
+  private final SingleFlight<ImageKey, ImageTagsSnapshot> imageTagsRequests =
+      new SingleFlight<>();
+  private final ConcurrentMap<ImageKey, CompletableFuture<ImageTagsSnapshot>> imageTagsFetches =
+      new ConcurrentHashMap<>();
+  private final LruCache<ImageKey, ImageTagsSnapshot> snapshots;
+  private final SingleFlight<MaterialKey, ImageTag> materialRequests = new SingleFlight<>();
+  private final LruCache<MaterialKey, KnownImage> knownImages =
+      new LruCache<>(KNOWN_IMAGE_CACHE_SIZE);
+  private final Set<MaterialKey> refreshing = ConcurrentHashMap.newKeySet();
+  private final LruCache<MaterialKey, PollBackoff> backoffs =
+      new LruCache<>(KNOWN_IMAGE_CACHE_SIZE);
+  private final LruCache<String, TagFilter> tagFilters = new LruCache<>(KNOWN_IMAGE_CACHE_SIZE);
+  private final Executor refreshExecutor;
+  private final LoadSpreader loadSpreader;
+  private final RegistryBulkheads bulkheads;
+  private final GoogleCredentialService credentialService;
 
   public GcrPoller(GcrClient gcrClient) {
+    this(gcrClient, new RegistryTokenCache());
+  }
+
+  public GcrPoller(GcrClient gcrClient, RegistryTokenCache tokenCache) {
+    this(gcrClient, tokenCache, new PollerSettings());
+  }
+
+  public GcrPoller(GcrClient gcrClient, RegistryTokenCache tokenCache, PollerSettings settings) {
+    this(gcrClient, tokenCache, settings, (GoogleCredentialService) null);
+  }
+
+  /**
+   * @param credentialService provides current GCP access tokens when registry tokens are renewed
+   *     after the access token of the original request has expired, or null to keep using that one
+   */
+  public GcrPoller(
+      GcrClient gcrClient,
+      RegistryTokenCache tokenCache,
+      PollerSettings settings,
+      GoogleCredentialService credentialService) {
+    this(
+        gcrClient,
+        tokenCache,
+        settings,
+        settings.getEffectiveMaxStalenessMs() > 0 ? newRefreshExecutor(settings) : null,
+        credentialService);
+  }
+
+  GcrPoller(
+      GcrClient gcrClient,
+      RegistryTokenCache tokenCache,
+      PollerSettings settings,
+      Executor refreshExecutor) {
+    this(gcrClient, tokenCache, settings, refreshExecutor, null);
+  }
+
+  GcrPoller(
+      GcrClient gcrClient,
+      RegistryTokenCache tokenCache,
+      PollerSettings settings,
+      Executor refreshExecutor,
+      GoogleCredentialService credentialService) {
     this.gcrClient = gcrClient;
+    this.credentialService = credentialService;
+    this.tokenCache = tokenCache;
+    this.settings = settings;
+    this.refreshExecutor = refreshExecutor;
+    this.loadSpreader = LoadSpreader.from(settings);
+    this.bulkheads = RegistryBulkheads.from(settings);
+    this.snapshots = new LruCache<>(settings.getSnapshotCacheSize());
+    if (settings.getPollIntervalMs() > 0
+        && settings.getMaxStalenessMs() > 0
+        && settings.getMaxStalenessMs() <= settings.getPollIntervalMs()) {
+      logger.warn(
+          String.format(
+              "Max staleness of %dms is not above the poll interval of %dms, so background poll "
+                  + "results will not answer most latest revision requests",
+              settings.getMaxStalenessMs(), settings.getPollIntervalMs()));
+    }
   }
 
   public CheckConnectionResultMessage checkConnectionToRepository(
@@ -92,18 +187,18 @@ public class GcrPoller {
         repositoryConfiguration.getProperty(PluginConfigurations.GCP_REGISTRY_URL).value();
     String imageName = packageConfiguration.getProperty(PluginConfigurations.DOCKER_IMAGE).value();
 
-    Pattern pattern = getDockerTagPattern(packageConfiguration);
+    TagFilter tagFilter = compileDockerTagFilter(packageConfiguration);
 
     try {
-      Token tokenResponse =
-          gcrClient.getImageAccessToken(registryUrl, project, imageName, gcrToken);
-      ImageTags imageListResponse =
-          gcrClient.getImageTags(registryUrl, project, imageName, tokenResponse.getToken());
-
-      Collection<ImageManifest> images = imageListResponse.getManifest().values();
-      ImageTag latestImageTag = getLatestImage(images, pattern);
-
-      if (latestImageTag.getTag().equals(NO_IMAGE_FOUND)) {
+      ImageTag latestImageTag =
+          findLatestImage(
+              registryUrl,
+              project,
+              imageName,
+              gcrTokenSource(repositoryConfiguration, gcrToken),
+              tagFilter);
+
+      if (latestImageTag.getTag().equals(ImageTag.NO_IMAGE_FOUND)) {
         logger.debug("Unable to find latest image");
         return new PackageRevisionMessage();
       }
@@ -127,24 +222,37 @@ public class GcrPoller {
     String registryUrl =
         repositoryConfiguration.getProperty(PluginConfigurations.GCP_REGISTRY_URL).value();
     String imageName = packageConfiguration.getProperty(PluginConfigurations.DOCKER_IMAGE).value();
-    Pattern pattern = getDockerTagPattern(packageConfiguration);
+    TagFilter tagFilter = compileDockerTagFilter(packageConfiguration);
 
     try {
-      Token tokenResponse =
-          gcrClient.getImageAccessToken(registryUrl, project, imageName, gcrToken);
-      ImageTags imageListResponse =
-          gcrClient.getImageTags(registryUrl, project, imageName, tokenResponse.getToken());
+      ImageTag previousImageTag = imageFromPackageRevisionMessage(previous);
+      PollBackoff backoff = getBackoff(packageConfiguration, repositoryConfiguration);
+      if (backoff != null && !backoff.isDue(previousImageTag, System.currentTimeMillis())) {
+        logger.debug("Image did not change recently, skipping check");
+        return new PackageRevisionMessage();
+      }
 
-      Collection<ImageManifest> images = imageListResponse.getManifest().values();
-      ImageTag latestImageTag = getLatestImage(images, pattern);
+      ImageTag latestImageTag =
+          findLatestImage(
+              registryUrl,
+              project,
+              imageName,
+              gcrTokenSource(repositoryConfiguration, gcrToken),
+              tagFilter);
 
-      ImageTag previousImageTag = imageFromPackageRevisionMessage(previous);
-      if (latestImageTag.getTag().equals(NO_IMAGE_FOUND)
+      if (latestImageTag.getTag().equals(ImageTag.NO_IMAGE_FOUND)
           || latestImageTag.equals(previousImageTag)) {
+        if (backoff != null) {
+          backoff.unchanged(previousImageTag, System.currentTimeMillis());
+        }
         logger.debug("Unable to find latest image");
         return new PackageRevisionMessage();
       }
 
+      if (backoff != null) {
+        backoff.changed();
+      }
+
       Date date = new Date();
       date.setTime(latestImageTag.getTimestamp());
       return new PackageRevisionMessage(latestImageTag.getTag(), date, "", "", "");
@@ -154,7 +262,422 @@ public class GcrPoller {
     }
   }
 
-  private Pattern getDockerTagPattern(PackageMaterialProperties packageConfiguration) {
+  /**
+   * Backoff of the remote checks of a material, or null when adaptive polling is disabled. Checks
+   * back off while the image does not change, see {@link PollBackoff}.
+   */
+  private PollBackoff getBackoff(
+      PackageMaterialProperties packageConfiguration,
+      PackageMaterialProperties repositoryConfiguration) {
+    if (settings.getMaxBackoffMs() <= 0) {
+      return null;
+    }
+    MaterialKey key = materialKey(packageConfiguration, repositoryConfiguration);
+    PollBackoff backoff = backoffs.get(key);
+    if (backoff == null) {
+      backoff = new PollBackoff(settings.getBaseBackoffMs(), settings.getMaxBackoffMs());
+      backoffs.put(key, backoff);
+    }
+    return backoff;
+  }
+
+  /**
+   * Find the latest image of a material. With a max staleness the last known result is returned
+   * while it is recent enough and refreshed in the background, so the registry is only on the
+   * request path for materials that have no recent result.
+   */
+  private ImageTag findLatestImage(
+      String registryUrl,
+      String project,
+      String imageName,
+      Supplier<String> gcrToken,
+      TagFilter tagFilter) {
+    MaterialKey key =
+        new MaterialKey(new ImageKey(registryUrl, project, imageName), tagFilter.getFilter());
+    Supplier<ImageTag> fetch =
+        () ->
+            bulkheads.call(
+                registryUrl,
+                () -> fetchLatestImage(registryUrl, project, imageName, gcrToken, tagFilter));
+    long maxStalenessMs = settings.getEffectiveMaxStalenessMs();
+    if (maxStalenessMs <= 0) {
+      return fetchOrLastKnown(key, fetch);
+    }
+
+    KnownImage known = knownImages.get(key);
+    if (known == null || known.ageMs() > maxStalenessMs) {
+      return fetchOrLastKnown(key, fetch);
+    }
+
+    // results polled by the PollScheduler are already as recent as its interval allows
+    if (known.ageMs() >= settings.getPollIntervalMs()) {
+      refreshInBackground(key, fetch);
+    }
+    return known.getImageTag();
+  }
+
+  /** Fetch the latest image of a material and keep it as its last known result. */
+  ImageTag refreshLatestImage(
+      PackageMaterialProperties packageConfiguration,
+      PackageMaterialProperties repositoryConfiguration,
+      String gcrToken) {
+    MaterialKey key = materialKey(packageConfiguration, repositoryConfiguration);
+    ImageKey image = key.getImage();
+    TagFilter tagFilter = compileDockerTagFilter(packageConfiguration);
+    Supplier<String> gcrTokens = gcrTokenSource(repositoryConfiguration, gcrToken);
+    return remember(
+        key,
+        bulkheads.call(
+            image.getRegistryUrl(),
+            () ->
+                fetchLatestImage(
+                    image.getRegistryUrl(),
+                    image.getProject(),
+                    image.getImageName(),
+                    gcrTokens,
+                    tagFilter)));
+  }
+
+  /**
+   * Asynchronous {@link #refreshLatestImage}. Whole tags/list fetches do not hold a thread while
+   * waiting for the registry, and bypass the bulkheads and the concurrent request limit, whose
+   * purpose is to bound blocked threads.
+   */
+  CompletableFuture<Void> refreshLatestImageAsync(
+      PackageMaterialProperties packageConfiguration,
+      PackageMaterialProperties repositoryConfiguration,
+      String gcrToken) {
+    return latestImageAsync(packageConfiguration, repositoryConfiguration, gcrToken)
+        .thenAccept(imageTag -> {});
+  }
+
+  /** Whether {@link #refreshLatestImageAsync} returns before the registry answers. */
+  boolean pollsAsynchronously() {
+    return settings.getTagsListPageSize() <= 0 && !settings.isStreamingTagsList();
+  }
+
+  private CompletableFuture<ImageTag> latestImageAsync(
+      PackageMaterialProperties packageConfiguration,
+      PackageMaterialProperties repositoryConfiguration,
+      String gcrToken) {
+    if (!pollsAsynchronously()) {
+      CompletableFuture<ImageTag> result = new CompletableFuture<>();
+      try {
+        result.complete(
+            refreshLatestImage(packageConfiguration, repositoryConfiguration, gcrToken));
+      } catch (RuntimeException e) {
+        result.completeExceptionally(e);
+      }
+      return result;
+    }
+    MaterialKey key = materialKey(packageConfiguration, repositoryConfiguration);
+    TagFilter tagFilter = compileDockerTagFilter(packageConfiguration);
+    ImageKey image = key.getImage();
+    ImageTagsSnapshot cached = snapshots.get(image);
+    Supplier<String> gcrTokens = gcrTokenSource(repositoryConfiguration, gcrToken);
+    CompletableFuture<ImageTagsSnapshot> snapshot =
+        cached != null && cached.isFresh(settings.getSnapshotTtlMs())
+            ? CompletableFuture.completedFuture(cached)
+            : fetchImageTagsAsync(image, cached, gcrTokens);
+    // fetched snapshots complete on the client's response threads, so the selection does not run
+    // on, and hold up, the I/O dispatch threads
+    return snapshot.thenApply(
+        fetched ->
+            remember(
+                key,
+                fetched.latestImage(tagFilter, GcrPoller::getLatestImages)));
+  }
+
+  static MaterialKey materialKey(
+      PackageMaterialProperties packageConfiguration,
+      PackageMaterialProperties repositoryConfiguration) {
+    String project = repositoryConfiguration.getProperty(PluginConfigurations.GCP_PROJECT).value();
+    String registryUrl =
+        repositoryConfiguration.getProperty(PluginConfigurations.GCP_REGISTRY_URL).value();
+    String imageName = packageConfiguration.getProperty(PluginConfigurations.DOCKER_IMAGE).value();
+    return new MaterialKey(
+        new ImageKey(registryUrl, project, imageName), getDockerTagFilter(packageConfiguration));
+  }
+
+  private void refreshInBackground(MaterialKey key, Supplier<ImageTag> fetch) {
+    if (!refreshing.add(key)) {
+      return;
+    }
+    try {
+      refreshExecutor.execute(
+          () -> {
+            try {
+              remember(key, fetch.get());
+            } catch (RuntimeException e) {
+              logger.error("Error while refreshing latest image in the background", e);
+            } finally {
+              refreshing.remove(key);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(key);
+      logger.error("Unable to schedule background refresh of latest image", e);
+    }
+  }
+
+  /**
+   * Fetch the latest image of a material, or answer with its last known result while its registry
+   * is unavailable, i.e. its circuit breaker is open, or its bulkhead is full or timed out.
+   */
+  private ImageTag fetchOrLastKnown(MaterialKey key, Supplier<ImageTag> fetch) {
+    try {
+      return remember(key, fetch.get());
+    } catch (RegistryUnavailableException e) {
+      KnownImage known = knownImages.get(key);
+      if (known == null) {
+        throw e;
+      }
+      logger.debug("Registry unavailable, using last known image of " + key);
+      return known.getImageTag();
+    }
+  }
+
+  private ImageTag remember(MaterialKey key, ImageTag imageTag) {
+    knownImages.put(key, new KnownImage(imageTag, System.currentTimeMillis()));
+    return imageTag;
+  }
+
+  private ImageTag fetchLatestImage(
+      String registryUrl,
+      String project,
+      String imageName,
+      Supplier<String> gcrToken,
+      TagFilter tagFilter) {
+    ImageKey key = new ImageKey(registryUrl, project, imageName);
+    MaterialKey materialKey = new MaterialKey(key, tagFilter.getFilter());
+    if (settings.getTagsListPageSize() > 0) {
+      loadSpreader.delay(materialKey);
+      return materialRequests.execute(
+          materialKey, () -> findLatestImageByPage(key, gcrToken, tagFilter));
+    }
+    if (settings.isStreamingTagsList()) {
+      loadSpreader.delay(materialKey);
+      return materialRequests.execute(
+          materialKey,
+          () -> {
+            Token tokenResponse = getImageAccessToken(registryUrl, project, imageName, gcrToken);
+            return loadSpreader.call(
+                () ->
+                    gcrClient.getLatestImageTag(
+                        registryUrl, project, imageName, tokenResponse.getToken(), tagFilter));
+          });
+    }
+
+    ImageTagsSnapshot cached = snapshots.get(key);
+    ImageTagsSnapshot snapshot;
+    if (cached != null && cached.isFresh(settings.getSnapshotTtlMs())) {
+      snapshot = cached;
+    } else {
+      loadSpreader.delay(materialKey);
+      snapshot = imageTagsRequests.execute(key, () -> fetchImageTags(key, cached, gcrToken));
+    }
+    return snapshot.latestImage(tagFilter, GcrPoller::getLatestImages);
+  }
+
+  /** Select the latest image page by page, so only one page has to be held at a time. */
+  private ImageTag findLatestImageByPage(
+      ImageKey key, Supplier<String> gcrToken, TagFilter tagFilter) {
+    Token tokenResponse =
+        getImageAccessToken(key.getRegistryUrl(), key.getProject(), key.getImageName(), gcrToken);
+    ImageTag latestImage = new ImageTag(ImageTag.NO_IMAGE_FOUND, 0);
+    String nextLink = null;
+    for (int page = 0; page < MAX_TAGS_LIST_PAGES; page++) {
+      String pageLink = nextLink;
+      RegistryResponse<ImageTags> response =
+          loadSpreader.call(
+              () ->
+                  gcrClient.getImageTagsPage(
+                      key.getRegistryUrl(),
+                      key.getProject(),
+                      key.getImageName(),
+                      tokenResponse.getToken(),
+                      settings.getTagsListPageSize(),
+                      pageLink));
+
+      Map<String, ImageManifest> manifests = response.getBody().getManifest();
+      if (manifests != null) {
+        ImageTag pageLatestImage = getLatestImage(manifests, tagFilter);
+        if (pageLatestImage.getTimestamp() > latestImage.getTimestamp()) {
+          latestImage = pageLatestImage;
+        }
+      }
+
+      if (response.getNextLink() == null || response.getNextLink().equals(nextLink)) {
+        return latestImage;
+      }
+      nextLink = response.getNextLink();
+    }
+    throw new PollerException("Image list has more than " + MAX_TAGS_LIST_PAGES + " pages");
+  }
+
+  /**
+   * Fetch the tags of an image. Concurrent fetches of the same image share a single token and
+   * tags/list request through {@link #imageTagsRequests}. When the previous response of an image
+   * carried validators the request is conditional, and a not modified response reuses the previous
+   * snapshot including the latest images already computed from it.
+   *
+   * <p>Snapshots are kept while they can be revalidated or reused within the snapshot TTL.
+   */
+  private ImageTagsSnapshot fetchImageTags(
+      ImageKey key, ImageTagsSnapshot previous, Supplier<String> gcrToken) {
+    Token tokenResponse =
+        getImageAccessToken(key.getRegistryUrl(), key.getProject(), key.getImageName(), gcrToken);
+    RegistryResponse<ImageTags> response =
+        loadSpreader.call(
+            () ->
+                gcrClient.getImageTags(
+                    key.getRegistryUrl(),
+                    key.getProject(),
+                    key.getImageName(),
+                    tokenResponse.getToken(),
+                    previous == null ? null : previous.getValidator()));
+    return toSnapshot(key, previous, response);
+  }
+
+  /**
+   * Asynchronous {@link #fetchImageTags}. Concurrent fetches of the same image share the future of
+   * the first one.
+   */
+  private CompletableFuture<ImageTagsSnapshot> fetchImageTagsAsync(
+      ImageKey key, ImageTagsSnapshot previous, Supplier<String> gcrToken) {
+    CompletableFuture<ImageTagsSnapshot> fetch = new CompletableFuture<>();
+    CompletableFuture<ImageTagsSnapshot> inFlight = imageTagsFetches.putIfAbsent(key, fetch);
+    if (inFlight != null) {
+      return inFlight;
+    }
+    getImageAccessTokenAsync(key, gcrToken)
+        .thenCompose(
+            tokenResponse ->
+                gcrClient.getImageTagsAsync(
+                    key.getRegistryUrl(),
+                    key.getProject(),
+                    key.getImageName(),
+                    tokenResponse.getToken(),
+                    previous == null ? null : previous.getValidator()))
+        .thenApply(response -> toSnapshot(key, previous, response))
+        .whenComplete(
+            (snapshot, error) -> {
+              imageTagsFetches.remove(key, fetch);
+              if (error != null) {
+                fetch.completeExceptionally(unwrap(error));
+              } else {
+                fetch.complete(snapshot);
+              }
+            });
+    return fetch;
+  }
+
+  private ImageTagsSnapshot toSnapshot(
+      ImageKey key, ImageTagsSnapshot previous, RegistryResponse<ImageTags> response) {
+    if (response.isNotModified()) {
+      if (previous == null) {
+        throw new PollerException("Unexpected not modified response for image list");
+      }
+      logger.debug("Image list not modified");
+      previous.markFetched();
+      return previous;
+    }
+
+    ImageTagsSnapshot snapshot =
+        new ImageTagsSnapshot(
+            response.getBody(),
+            response.getValidator(),
+            previous == null
+                ? Collections.<TagFilter>emptyList()
+                : previous.getRequestedFilters());
+    if (snapshot.getValidator() != null || settings.getSnapshotTtlMs() > 0) {
+      snapshots.put(key, snapshot);
+    } else {
+      snapshots.remove(key);
+    }
+    return snapshot;
+  }
+
+  private Token getImageAccessToken(
+      String registryUrl, String project, String imageName, Supplier<String> gcrToken) {
+    RegistryTokenCache.TokenKey key =
+        new RegistryTokenCache.TokenKey(
+            registryUrl, project, imageName, RegistryTokenCache.PULL_SCOPE);
+    return tokenCache.get(key, tokenLoader(registryUrl, project, imageName, gcrToken));
+  }
+
+  private CompletableFuture<Token> getImageAccessTokenAsync(
+      ImageKey image, Supplier<String> gcrToken) {
+    RegistryTokenCache.TokenKey key =
+        new RegistryTokenCache.TokenKey(
+            image.getRegistryUrl(),
+            image.getProject(),
+            image.getImageName(),
+            RegistryTokenCache.PULL_SCOPE);
+    Token cached = tokenCache.get(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return gcrClient
+        .getImageAccessTokenAsync(
+            image.getRegistryUrl(), image.getProject(), image.getImageName(), gcrToken.get())
+        .thenApply(
+            token -> {
+              tokenCache.put(
+                  key,
+                  token,
+                  tokenLoader(
+                      image.getRegistryUrl(), image.getProject(), image.getImageName(), gcrToken));
+              return token;
+            });
+  }
+
+  /**
+   * Loads registry tokens of an image, now and when the token cache renews them. The GCP access
+   * token is obtained on every load, since the one of the original request may have expired.
+   */
+  private Supplier<Token> tokenLoader(
+      String registryUrl, String project, String imageName, Supplier<String> gcrToken) {
+    return () ->
+        loadSpreader.call(
+            () -> gcrClient.getImageAccessToken(registryUrl, project, imageName, gcrToken.get()));
+  }
+
+  /**
+   * Source of the GCP access token of a repository. With a credential service the current token of
+   * its service account is obtained on every call, otherwise the given token is used.
+   */
+  private Supplier<String> gcrTokenSource(
+      PackageMaterialProperties repositoryConfiguration, String gcrToken) {
+    PackageMaterialProperty serviceAccount =
+        repositoryConfiguration.getProperty(PluginConfigurations.GCP_SERVICE_ACCOUNT);
+    if (credentialService == null
+        || serviceAccount == null
+        || Strings.isNullOrEmpty(serviceAccount.value())) {
+      return () -> gcrToken;
+    }
+    String jsonServiceAccount = serviceAccount.value();
+    return () ->
+        credentialService.getGcrCredential(jsonServiceAccount).getAccessToken().getTokenValue();
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null
+        ? error.getCause()
+        : error;
+  }
+
+  private TagFilter compileDockerTagFilter(PackageMaterialProperties packageConfiguration) {
+    String filter = getDockerTagFilter(packageConfiguration);
+    TagFilter tagFilter = tagFilters.get(filter);
+    if (tagFilter == null) {
+      tagFilter = TagFilter.compile(filter);
+      tagFilters.put(filter, tagFilter);
+    }
+    return tagFilter;
+  }
+
+  private static String getDockerTagFilter(PackageMaterialProperties packageConfiguration) {
     PackageMaterialProperty tagFilterProp =
         packageConfiguration.getProperty(PluginConfigurations.DOCKER_TAG_FILTER);
     String filter;
@@ -168,7 +691,7 @@ public class GcrPoller {
       filter = ".*";
     }
 
-    return Pattern.compile(filter);
+    return filter;
   }
 
   private ImageTag imageFromPackageRevisionMessage(PackageRevisionMessage previous) {
@@ -176,31 +699,81 @@ public class GcrPoller {
     return new ImageTag(previous.getRevision(), timestamp);
   }
 
-  private ImageTag getLatestImage(Collection<ImageManifest> imageManifests, Pattern pattern) {
-    ImageTag latestImage = new ImageTag(NO_IMAGE_FOUND, 0);
+  private static List<ImageTag> getLatestImages(ImageTags imageTags, List<TagFilter> tagFilters) {
+    Map<String, ImageManifest> imageManifests = imageTags.getManifest();
+    if (imageManifests instanceof ManifestTable) {
+      return ((ManifestTable) imageManifests).latestImages(tagFilters);
+    }
+    List<ImageTag> latestImages = new ArrayList<>(tagFilters.size());
+    for (TagFilter tagFilter : tagFilters) {
+      latestImages.add(getLatestImage(imageManifests, tagFilter));
+    }
+    return latestImages;
+  }
+
+  private static ImageTag getLatestImage(
+      Map<String, ImageManifest> imageManifests, TagFilter tagFilter) {
+    if (imageManifests instanceof ManifestTable) {
+      return ((ManifestTable) imageManifests).latestImage(tagFilter);
+    }
+    Predicate<String> matcher = tagFilter.matcher();
+    String latestTag = ImageTag.NO_IMAGE_FOUND;
+    long latestTimestamp = 0;
 
-    for (ImageManifest imageManifest : imageManifests) {
-      boolean matchPattern = false;
-      String matchTag = NO_IMAGE_FOUND;
+    for (ImageManifest imageManifest : imageManifests.values()) {
+      String matchTag = null;
       for (String tag : imageManifest.getTag()) {
-        Matcher matcher = pattern.matcher(tag);
-        if (matcher.find()) {
-          matchPattern = true;
+        if (matcher.test(tag)) {
           matchTag = tag;
           break;
         }
       }
 
-      if (!matchPattern) {
+      if (matchTag == null) {
         continue;
       }
 
       long timeUploaded = Long.parseLong(imageManifest.getTimeUploadedMs());
-      if (timeUploaded > latestImage.getTimestamp()) {
-        latestImage = new ImageTag(matchTag, timeUploaded);
+      if (timeUploaded > latestTimestamp) {
+        latestTag = matchTag;
+        latestTimestamp = timeUploaded;
       }
     }
 
-    return latestImage;
+    return new ImageTag(latestTag, latestTimestamp);
+  }
+
+  private static Executor newRefreshExecutor(PollerSettings settings) {
+    ExecutorService threadPerTask =
+        settings.isVirtualThreads()
+            ? VirtualThreads.newThreadPerTaskExecutor("gcr-poller-background-refresh")
+            : null;
+    if (threadPerTask == null) {
+      return Executors.newFixedThreadPool(
+          settings.getRefreshThreads(),
+          VirtualThreads.factory("gcr-poller-background-refresh", false));
+    }
+    // a virtual thread per refresh, which waits for one of the refresh threads' permits to fetch
+    Semaphore permits = new Semaphore(settings.getRefreshThreads());
+    return refresh ->
+        threadPerTask.execute(
+            () -> {
+              permits.acquireUninterruptibly();
+              try {
+                refresh.run();
+              } finally {
+                permits.release();
+              }
+            });
+  }
+
+  @Value
+  private static class KnownImage {
+    ImageTag imageTag;
+    long fetchedAtMs;
+
+    long ageMs() {
+      return System.currentTimeMillis() - fetchedAtMs;
+    }
   }
 }
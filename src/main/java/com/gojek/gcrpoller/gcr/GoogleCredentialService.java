@@ -18,18 +18,55 @@
 package com.gojek.gcrpoller.gcr;
 
 import com.gojek.gcrpoller.exception.InvalidCredentialException;
+import com.gojek.gcrpoller.util.Jitter;
+import com.gojek.gcrpoller.util.LruCache;
+import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
 import com.thoughtworks.go.plugin.api.logging.Logger;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
+import lombok.experimental.NonFinal;
 
 public class GoogleCredentialService {
+  static final int DEFAULT_CACHE_SIZE = 256;
+  static final long REFRESH_MARGIN_MS = TimeUnit.MINUTES.toMillis(1);
+  static final long DEFAULT_IDLE_MS = TimeUnit.MINUTES.toMillis(30);
+
   Logger logger = Logger.getLoggerFor(GoogleCredentialService.class);
 
+  private final LruCache<String, CachedCredential> credentialCache;
+  private final long idleMs;
+
+  public GoogleCredentialService() {
+    this(new LruCache<String, CachedCredential>(DEFAULT_CACHE_SIZE));
+  }
+
+  GoogleCredentialService(LruCache<String, CachedCredential> credentialCache) {
+    this(credentialCache, DEFAULT_IDLE_MS);
+  }
+
+  /**
+   * @param credentialCache cached credentials by hash of their service account key
+   * @param idleMs credentials which have not been read for this long are dropped instead of
+   *     refreshed
+   */
+  GoogleCredentialService(LruCache<String, CachedCredential> credentialCache, long idleMs) {
+    this.credentialCache = credentialCache;
+    this.idleMs = idleMs;
+  }
+
   /**
-   * Create GoogleCredentials instance which able to access GCR service.
+   * Get a GoogleCredentials instance which able to access GCR service.
+   *
+   * <p>Credentials are cached by a hash of the service account key, and are only refreshed when
+   * their access token is missing or about to expire.
    *
    * @param jsonServiceAccount JSON formatted service account string
    * @return GoogleCredentials instance.
@@ -39,16 +76,22 @@ public class GoogleCredentialService {
       throw new IllegalArgumentException("jsonServiceAccount is null or empty");
     }
 
+    String cacheKey = cacheKey(jsonServiceAccount);
+    CachedCredential cached = credentialCache.get(cacheKey);
+    long now = System.currentTimeMillis();
     GoogleCredentials googleCredentials;
     try {
-      googleCredentials =
-          GoogleCredentials.fromStream(new ByteArrayInputStream(jsonServiceAccount.getBytes()))
-              .createScoped(
-                  Arrays.asList(
-                      "https://www.googleapis.com/auth/cloud-platform",
-                      "https://www.googleapis.com/auth/devstorage.read_write"));
-
-      googleCredentials.refreshIfExpired();
+      if (cached == null) {
+        googleCredentials = loadCredential(jsonServiceAccount);
+        credentialCache.put(cacheKey, new CachedCredential(googleCredentials, now));
+      } else {
+        cached.read(now);
+        googleCredentials = cached.getCredentials();
+      }
+
+      if (isNearExpiry(googleCredentials, REFRESH_MARGIN_MS)) {
+        googleCredentials.refresh();
+      }
     } catch (IOException e) {
       logger.error("Unable to get GCR credential", e);
       throw new InvalidCredentialException("Unable to get GCR credential");
@@ -56,4 +99,69 @@ public class GoogleCredentialService {
 
     return googleCredentials;
   }
+
+  /**
+   * Refresh cached credentials whose access token expires within {@code leadMs} plus a per
+   * credential jitter of up to {@code maxJitterMs}. Credentials which have not been read for the
+   * idle time are dropped instead, so that the keys of removed materials are not refreshed
+   * forever.
+   *
+   * @param leadMs how long before expiry credentials are refreshed
+   * @param maxJitterMs upper bound of the per credential jitter added to the lead time
+   */
+  public void refreshExpiring(long leadMs, long maxJitterMs) {
+    for (Map.Entry<String, CachedCredential> entry : credentialCache.snapshot().entrySet()) {
+      CachedCredential cached = entry.getValue();
+      if (System.currentTimeMillis() - cached.getLastReadAtMs() > idleMs) {
+        credentialCache.remove(entry.getKey(), cached);
+        continue;
+      }
+      long lead = leadMs + Jitter.deterministic(entry.getKey(), maxJitterMs);
+      if (!isNearExpiry(cached.getCredentials(), lead)) {
+        continue;
+      }
+      try {
+        cached.getCredentials().refresh();
+      } catch (IOException | RuntimeException e) {
+        logger.warn("Unable to refresh GCR credential", e);
+      }
+    }
+  }
+
+  public LruCache<String, CachedCredential> getCredentialCache() {
+    return credentialCache;
+  }
+
+  GoogleCredentials loadCredential(String jsonServiceAccount) throws IOException {
+    return GoogleCredentials.fromStream(new ByteArrayInputStream(jsonServiceAccount.getBytes()))
+        .createScoped(
+            Arrays.asList(
+                "https://www.googleapis.com/auth/cloud-platform",
+                "https://www.googleapis.com/auth/devstorage.read_write"));
+  }
+
+  static boolean isNearExpiry(GoogleCredentials googleCredentials, long marginMs) {
+    AccessToken accessToken = googleCredentials.getAccessToken();
+    if (accessToken == null) {
+      return true;
+    }
+    if (accessToken.getExpirationTime() == null) {
+      return false;
+    }
+    return accessToken.getExpirationTime().getTime() - System.currentTimeMillis() <= marginMs;
+  }
+
+  private static String cacheKey(String jsonServiceAccount) {
+    return Hashing.sha256().hashString(jsonServiceAccount, Charsets.UTF_8).toString();
+  }
+
+  @Value
+  public static class CachedCredential {
+    GoogleCredentials credentials;
+    @NonFinal volatile long lastReadAtMs;
+
+    void read(long nowMs) {
+      lastReadAtMs = nowMs;
+    }
+  }
 }
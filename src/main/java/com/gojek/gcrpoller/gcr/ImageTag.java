@@ -26,6 +26,9 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 public class ImageTag {
+  /** Tag of the image returned when no image matches the tag filter. */
+  public static final String NO_IMAGE_FOUND = "";
+
   private String tag;
   private long timestamp;
 
@@ -18,6 +18,7 @@
 package com.gojek.gcrpoller.gcr;
 
 import com.google.gson.annotations.Expose;
+import com.google.gson.annotations.JsonAdapter;
 import java.util.List;
 import java.util.Map;
 import lombok.AllArgsConstructor;
@@ -27,6 +28,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonAdapter(ImageTagsAdapter.class)
 public class ImageTags {
   @Expose List<String> child;
 
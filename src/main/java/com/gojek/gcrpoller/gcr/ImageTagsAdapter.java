@@ -0,0 +1,134 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gson adapter of {@link ImageTags}, which reads the manifests of a tags/list response into a
+ * {@link ManifestTable} instead of one {@link ImageManifest} per digest. Written JSON is the same as
+ * with the reflective adapter.
+ */
+class ImageTagsAdapter extends TypeAdapter<ImageTags> {
+
+  @Override
+  public ImageTags read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    ImageTags imageTags = new ImageTags();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (name) {
+        case "child":
+          imageTags.setChild(readStrings(in));
+          break;
+        case "manifest":
+          imageTags.setManifest(ManifestTable.read(in));
+          break;
+        case "name":
+          imageTags.setName(in.nextString());
+          break;
+        case "tags":
+          imageTags.setTags(readStrings(in));
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return imageTags;
+  }
+
+  @Override
+  public void write(JsonWriter out, ImageTags imageTags) throws IOException {
+    if (imageTags == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name("child");
+    writeStrings(out, imageTags.getChild());
+    out.name("manifest");
+    if (imageTags.getManifest() == null) {
+      out.nullValue();
+    } else {
+      out.beginObject();
+      for (Map.Entry<String, ImageManifest> entry : imageTags.getManifest().entrySet()) {
+        out.name(entry.getKey());
+        writeManifest(out, entry.getValue());
+      }
+      out.endObject();
+    }
+    out.name("name").value(imageTags.getName());
+    out.name("tags");
+    writeStrings(out, imageTags.getTags());
+    out.endObject();
+  }
+
+  private static void writeManifest(JsonWriter out, ImageManifest manifest) throws IOException {
+    if (manifest == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    out.name("imageSizeBytes").value(manifest.getImageSizeBytes());
+    out.name("layerId").value(manifest.getLayerId());
+    out.name("mediaType").value(manifest.getMediaType());
+    out.name("tag");
+    writeStrings(out, manifest.getTag());
+    out.name("timeCreatedMs").value(manifest.getTimeCreatedMs());
+    out.name("timeUploadedMs").value(manifest.getTimeUploadedMs());
+    out.endObject();
+  }
+
+  private static List<String> readStrings(JsonReader in) throws IOException {
+    List<String> values = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      values.add(in.nextString());
+    }
+    in.endArray();
+    return values;
+  }
+
+  private static void writeStrings(JsonWriter out, List<String> values) throws IOException {
+    if (values == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginArray();
+    for (String value : values) {
+      out.value(value);
+    }
+    out.endArray();
+  }
+}
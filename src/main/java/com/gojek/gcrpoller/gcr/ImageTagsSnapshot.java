@@ -0,0 +1,117 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+/**
+ * Tags of an image as returned by one tags/list response, together with the latest image computed
+ * for each tag filter, so that they only have to be computed once per response. Snapshots are
+ * shared by all materials of the same image.
+ *
+ * <p>The filters requested from a snapshot are carried over to the snapshot replacing it. The
+ * first request to the new snapshot selects the latest images of all of them in one pass, instead
+ * of one pass per material.
+ */
+class ImageTagsSnapshot {
+  private final ImageTags imageTags;
+  private final CacheValidator validator;
+  private final Collection<TagFilter> activeFilters;
+  private final ConcurrentMap<String, ImageTag> latestByFilter = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, TagFilter> requestedFilters = new ConcurrentHashMap<>();
+  private volatile long fetchedAtMs;
+
+  ImageTagsSnapshot(ImageTags imageTags, CacheValidator validator) {
+    this(imageTags, validator, Collections.emptyList());
+  }
+
+  /**
+   * @param activeFilters filters whose latest images are selected together with the first
+   *     requested one
+   */
+  ImageTagsSnapshot(
+      ImageTags imageTags, CacheValidator validator, Collection<TagFilter> activeFilters) {
+    this.imageTags = imageTags;
+    this.validator = validator;
+    this.activeFilters = activeFilters;
+    this.fetchedAtMs = System.currentTimeMillis();
+  }
+
+  ImageTags getImageTags() {
+    return imageTags;
+  }
+
+  CacheValidator getValidator() {
+    return validator;
+  }
+
+  /** Record that the registry confirmed the snapshot is still current. */
+  void markFetched() {
+    fetchedAtMs = System.currentTimeMillis();
+  }
+
+  boolean isFresh(long ttlMs) {
+    return System.currentTimeMillis() - fetchedAtMs < ttlMs;
+  }
+
+  /** Filters the latest image was requested for from this snapshot. */
+  Collection<TagFilter> getRequestedFilters() {
+    return Collections.unmodifiableCollection(requestedFilters.values());
+  }
+
+  /**
+   * The latest image matching a filter. When it is not known yet, it is selected together with
+   * those of all active filters that are not known yet either.
+   *
+   * @param selector selects the latest image of each of the given filters, in their order
+   */
+  ImageTag latestImage(
+      TagFilter tagFilter, BiFunction<ImageTags, List<TagFilter>, List<ImageTag>> selector) {
+    String filter = tagFilter.getFilter();
+    requestedFilters.putIfAbsent(filter, tagFilter);
+    ImageTag latestImage = latestByFilter.get(filter);
+    if (latestImage != null) {
+      return latestImage;
+    }
+    synchronized (this) {
+      latestImage = latestByFilter.get(filter);
+      if (latestImage != null) {
+        return latestImage;
+      }
+      List<TagFilter> pending = new ArrayList<>();
+      pending.add(tagFilter);
+      for (TagFilter activeFilter : activeFilters) {
+        if (!activeFilter.getFilter().equals(filter)
+            && !latestByFilter.containsKey(activeFilter.getFilter())) {
+          pending.add(activeFilter);
+        }
+      }
+      List<ImageTag> latestImages = selector.apply(imageTags, pending);
+      for (int i = 0; i < pending.size(); i++) {
+        latestByFilter.put(pending.get(i).getFilter(), latestImages.get(i));
+      }
+      return latestImages.get(0);
+    }
+  }
+}
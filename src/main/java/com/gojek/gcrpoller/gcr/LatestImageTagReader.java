@@ -0,0 +1,102 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Predicate;
+
+/**
+ * Selects the latest image matching a tag filter while reading a tags/list response, without
+ * materializing {@link ImageTags}. Only the {@code tag} and {@code timeUploadedMs} fields of each
+ * manifest are read, everything else is skipped, so memory use does not grow with the number of
+ * manifests in the repository.
+ *
+ * <p>The selection is the same as for a parsed {@link ImageTags}: the first tag of a manifest
+ * matching the filter represents the manifest, and the manifest uploaded last wins.
+ */
+class LatestImageTagReader {
+  private final Predicate<String> matcher;
+  private String latestTag;
+  private long latestTimestamp;
+
+  LatestImageTagReader(TagFilter tagFilter) {
+    this.matcher = tagFilter.matcher();
+  }
+
+  ImageTag read(Reader in) throws IOException {
+    latestTag = ImageTag.NO_IMAGE_FOUND;
+    latestTimestamp = 0;
+    try (JsonReader reader = new JsonReader(in)) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (!"manifest".equals(reader.nextName()) || reader.peek() != JsonToken.BEGIN_OBJECT) {
+          reader.skipValue();
+          continue;
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+          reader.nextName();
+          readManifest(reader);
+        }
+        reader.endObject();
+      }
+      reader.endObject();
+    }
+    return new ImageTag(latestTag, latestTimestamp);
+  }
+
+  private void readManifest(JsonReader reader) throws IOException {
+    String matchTag = null;
+    long timeUploaded = 0;
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if ("tag".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        matchTag = readMatchingTag(reader);
+      } else if ("timeUploadedMs".equals(name) && reader.peek() != JsonToken.NULL) {
+        timeUploaded = Long.parseLong(reader.nextString());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    if (matchTag != null && timeUploaded > latestTimestamp) {
+      latestTag = matchTag;
+      latestTimestamp = timeUploaded;
+    }
+  }
+
+  private String readMatchingTag(JsonReader reader) throws IOException {
+    String matchTag = null;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      String tag = reader.nextString();
+      if (matchTag == null && matcher.test(tag)) {
+        matchTag = tag;
+      }
+    }
+    reader.endArray();
+    return matchTag;
+  }
+}
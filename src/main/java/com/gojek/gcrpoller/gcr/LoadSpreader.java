@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.exception.PollerException;
+import com.gojek.gcrpoller.util.Jitter;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Spreads registry requests that GoCD triggers for all materials at once. Each material is delayed
+ * by a jitter derived from its key, so bursts are staggered the same way every cycle, and at most a
+ * fixed number of requests run at the same time.
+ */
+class LoadSpreader {
+  private final long maxDelayMs;
+  private final long slotTimeoutMs;
+  private final Semaphore slots;
+
+  LoadSpreader(long maxDelayMs, int maxConcurrentRequests, long slotTimeoutMs) {
+    this.maxDelayMs = maxDelayMs;
+    this.slotTimeoutMs = slotTimeoutMs;
+    this.slots = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+  }
+
+  static LoadSpreader from(PollerSettings settings) {
+    return new LoadSpreader(
+        settings.getMaxSpreadDelayMs(),
+        settings.getMaxConcurrentRequests(),
+        settings.getRequestSlotTimeoutMs());
+  }
+
+  /** Wait for the jitter of a material. */
+  void delay(MaterialKey key) {
+    long delayMs = Jitter.deterministic(key, maxDelayMs);
+    if (delayMs <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(delayMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PollerException("Interrupted while spreading registry requests", e);
+    }
+  }
+
+  /** Run a registry request once one of the concurrent request slots is free. */
+  <T> T call(Supplier<T> request) {
+    if (slots == null) {
+      return request.get();
+    }
+    try {
+      if (!slots.tryAcquire(slotTimeoutMs, TimeUnit.MILLISECONDS)) {
+        throw new PollerException(
+            "Timed out after " + slotTimeoutMs + "ms waiting to send a registry request");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PollerException("Interrupted while waiting to send a registry request", e);
+    }
+    try {
+      return request.get();
+    } finally {
+      slots.release();
+    }
+  }
+
+  int availableSlots() {
+    return slots == null ? Integer.MAX_VALUE : slots.availablePermits();
+  }
+}
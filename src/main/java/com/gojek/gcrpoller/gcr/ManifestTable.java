@@ -0,0 +1,323 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Compact, read-only manifest map of a tags/list response. Manifests are stored column by column in
+ * parallel arrays: timestamps and sizes as primitive longs, media types interned, and the tags of
+ * all manifests in one flat array. This takes a fraction of the heap of one {@link
+ * ImageManifest} per digest, and lets {@link #latestImage(TagFilter)} select without parsing or
+ * allocating per manifest.
+ *
+ * <p>The map is still a {@code Map<String, ImageManifest>}; its entries are created on demand.
+ */
+class ManifestTable extends AbstractMap<String, ImageManifest> {
+  /** Value of a timestamp or size that is missing from the response. */
+  static final long MISSING = Long.MIN_VALUE;
+
+  private final int size;
+  private final String[] digests;
+  private final long[] imageSizeBytes;
+  private final String[] layerIds;
+  private final String[] mediaTypes;
+  private final int[] tagOffsets;
+  private final String[] tags;
+  private final long[] timeCreatedMs;
+  private final long[] timeUploadedMs;
+
+  private ManifestTable(Builder builder) {
+    this.size = builder.size;
+    this.digests = Arrays.copyOf(builder.digests, size);
+    this.imageSizeBytes = Arrays.copyOf(builder.imageSizeBytes, size);
+    this.layerIds = Arrays.copyOf(builder.layerIds, size);
+    this.mediaTypes = Arrays.copyOf(builder.mediaTypes, size);
+    this.tagOffsets = Arrays.copyOf(builder.tagOffsets, size + 1);
+    this.tags = Arrays.copyOf(builder.tags, builder.tagCount);
+    this.timeCreatedMs = Arrays.copyOf(builder.timeCreatedMs, size);
+    this.timeUploadedMs = Arrays.copyOf(builder.timeUploadedMs, size);
+  }
+
+  /**
+   * Read the {@code manifest} object of a tags/list response.
+   *
+   * @throws JsonSyntaxException if a timestamp or size is not a number
+   */
+  static ManifestTable read(JsonReader reader) throws IOException {
+    Builder builder = new Builder();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      builder.startManifest(reader.nextName());
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        builder.endManifest();
+        continue;
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (reader.peek() == JsonToken.NULL) {
+          reader.nextNull();
+          continue;
+        }
+        switch (name) {
+          case "imageSizeBytes":
+            builder.imageSizeBytes[builder.size] = readLong(reader);
+            break;
+          case "layerId":
+            builder.layerIds[builder.size] = reader.nextString();
+            break;
+          case "mediaType":
+            builder.mediaTypes[builder.size] = reader.nextString().intern();
+            break;
+          case "tag":
+            reader.beginArray();
+            while (reader.hasNext()) {
+              builder.addTag(reader.nextString());
+            }
+            reader.endArray();
+            break;
+          case "timeCreatedMs":
+            builder.timeCreatedMs[builder.size] = readLong(reader);
+            break;
+          case "timeUploadedMs":
+            builder.timeUploadedMs[builder.size] = readLong(reader);
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      builder.endManifest();
+    }
+    reader.endObject();
+    return new ManifestTable(builder);
+  }
+
+  /**
+   * Select the manifest uploaded last among those with a tag matching the filter. The first
+   * matching tag of a manifest represents it. Manifests which cannot be newer than the current
+   * candidate are not matched at all.
+   *
+   * @return the latest image, or an image with tag {@link ImageTag#NO_IMAGE_FOUND}
+   */
+  ImageTag latestImage(TagFilter tagFilter) {
+    return latestImage(tagFilter.matcher());
+  }
+
+  /**
+   * Select like {@link #latestImage(TagFilter)} with a matcher that is reused for every tag.
+   * Nothing is allocated per manifest: the candidate is tracked as the index of its tag and its
+   * upload time, and only the winner becomes an {@link ImageTag}.
+   */
+  ImageTag latestImage(Predicate<String> matcher) {
+    int latestTagIndex = -1;
+    long latestTimestamp = 0;
+    for (int i = 0; i < size; i++) {
+      long uploaded = timeUploadedMs[i];
+      if (uploaded <= latestTimestamp) {
+        continue;
+      }
+      for (int t = tagOffsets[i]; t < tagOffsets[i + 1]; t++) {
+        if (matcher.test(tags[t])) {
+          latestTagIndex = t;
+          latestTimestamp = uploaded;
+          break;
+        }
+      }
+    }
+    return latestTagIndex < 0
+        ? new ImageTag(ImageTag.NO_IMAGE_FOUND, 0)
+        : new ImageTag(tags[latestTagIndex], latestTimestamp);
+  }
+
+  /**
+   * Select like {@link #latestImage(TagFilter)} for several filters in a single pass over the
+   * manifests. Each filter only matches the tags of manifests newer than its own candidate, and
+   * manifests older than the candidates of all filters are skipped.
+   *
+   * @return the latest image of each filter, in the order of the filters
+   */
+  List<ImageTag> latestImages(List<TagFilter> tagFilters) {
+    int filterCount = tagFilters.size();
+    List<Predicate<String>> matchers = new ArrayList<>(filterCount);
+    for (TagFilter tagFilter : tagFilters) {
+      matchers.add(tagFilter.matcher());
+    }
+    int[] latestTagIndex = new int[filterCount];
+    Arrays.fill(latestTagIndex, -1);
+    long[] latestTimestamp = new long[filterCount];
+    long oldestTimestamp = 0;
+    for (int i = 0; i < size; i++) {
+      long uploaded = timeUploadedMs[i];
+      if (uploaded <= oldestTimestamp) {
+        continue;
+      }
+      boolean improved = false;
+      for (int f = 0; f < filterCount; f++) {
+        if (uploaded <= latestTimestamp[f]) {
+          continue;
+        }
+        Predicate<String> matcher = matchers.get(f);
+        for (int t = tagOffsets[i]; t < tagOffsets[i + 1]; t++) {
+          if (matcher.test(tags[t])) {
+            latestTagIndex[f] = t;
+            latestTimestamp[f] = uploaded;
+            improved = true;
+            break;
+          }
+        }
+      }
+      if (improved) {
+        oldestTimestamp = Long.MAX_VALUE;
+        for (long timestamp : latestTimestamp) {
+          oldestTimestamp = Math.min(oldestTimestamp, timestamp);
+        }
+      }
+    }
+
+    List<ImageTag> latestImages = new ArrayList<>(filterCount);
+    for (int f = 0; f < filterCount; f++) {
+      latestImages.add(
+          latestTagIndex[f] < 0
+              ? new ImageTag(ImageTag.NO_IMAGE_FOUND, 0)
+              : new ImageTag(tags[latestTagIndex[f]], latestTimestamp[f]));
+    }
+    return latestImages;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Entry<String, ImageManifest>> entrySet() {
+    return new AbstractSet<Entry<String, ImageManifest>>() {
+      @Override
+      public Iterator<Entry<String, ImageManifest>> iterator() {
+        return new Iterator<Entry<String, ImageManifest>>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          public Entry<String, ImageManifest> next() {
+            if (next >= size) {
+              throw new NoSuchElementException();
+            }
+            int i = next++;
+            return new SimpleImmutableEntry<>(digests[i], manifest(i));
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private ImageManifest manifest(int i) {
+    List<String> manifestTags =
+        Collections.unmodifiableList(
+            Arrays.asList(tags).subList(tagOffsets[i], tagOffsets[i + 1]));
+    return new ImageManifest(
+        format(imageSizeBytes[i]),
+        layerIds[i],
+        mediaTypes[i],
+        manifestTags,
+        format(timeCreatedMs[i]),
+        format(timeUploadedMs[i]));
+  }
+
+  private static String format(long value) {
+    return value == MISSING ? null : Long.toString(value);
+  }
+
+  private static long readLong(JsonReader reader) throws IOException {
+    String value = reader.nextString();
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new JsonSyntaxException("Expected a number but was " + value, e);
+    }
+  }
+
+  private static class Builder {
+    private int size;
+    private int tagCount;
+    private String[] digests = new String[16];
+    private long[] imageSizeBytes = new long[16];
+    private String[] layerIds = new String[16];
+    private String[] mediaTypes = new String[16];
+    private int[] tagOffsets = new int[17];
+    private String[] tags = new String[16];
+    private long[] timeCreatedMs = new long[16];
+    private long[] timeUploadedMs = new long[16];
+
+    void startManifest(String digest) {
+      if (size == digests.length) {
+        int capacity = size * 2;
+        digests = Arrays.copyOf(digests, capacity);
+        imageSizeBytes = Arrays.copyOf(imageSizeBytes, capacity);
+        layerIds = Arrays.copyOf(layerIds, capacity);
+        mediaTypes = Arrays.copyOf(mediaTypes, capacity);
+        tagOffsets = Arrays.copyOf(tagOffsets, capacity + 1);
+        timeCreatedMs = Arrays.copyOf(timeCreatedMs, capacity);
+        timeUploadedMs = Arrays.copyOf(timeUploadedMs, capacity);
+      }
+      digests[size] = digest;
+      imageSizeBytes[size] = MISSING;
+      timeCreatedMs[size] = MISSING;
+      timeUploadedMs[size] = MISSING;
+      tagOffsets[size] = tagCount;
+    }
+
+    void addTag(String tag) {
+      if (tagCount == tags.length) {
+        tags = Arrays.copyOf(tags, tagCount * 2);
+      }
+      tags[tagCount++] = tag;
+    }
+
+    void endManifest() {
+      size++;
+      tagOffsets[size] = tagCount;
+    }
+  }
+}
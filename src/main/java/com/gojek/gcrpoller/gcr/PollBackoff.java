@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+/**
+ * Interval between remote checks of a material. The interval doubles, up to a cap, every time a
+ * check finds the image unchanged, and resets as soon as a check finds a new image.
+ */
+class PollBackoff {
+  private final long baseIntervalMs;
+  private final long maxIntervalMs;
+  private ImageTag unchangedImage;
+  private long intervalMs;
+  private long nextCheckMs;
+  private long checks;
+  private long changes;
+
+  PollBackoff(long baseIntervalMs, long maxIntervalMs) {
+    this.baseIntervalMs = baseIntervalMs;
+    this.maxIntervalMs = maxIntervalMs;
+  }
+
+  /**
+   * Whether the material has to be checked remotely. It is always due when GoCD's previous
+   * revision is not the one the last check found unchanged.
+   */
+  synchronized boolean isDue(ImageTag previous, long nowMs) {
+    return nowMs >= nextCheckMs || !previous.equals(unchangedImage);
+  }
+
+  synchronized void unchanged(ImageTag image, long nowMs) {
+    checks++;
+    unchangedImage = image;
+    intervalMs = intervalMs == 0 ? baseIntervalMs : Math.min(intervalMs * 2, maxIntervalMs);
+    nextCheckMs = nowMs + intervalMs;
+  }
+
+  synchronized void changed() {
+    checks++;
+    changes++;
+    unchangedImage = null;
+    intervalMs = 0;
+    nextCheckMs = 0;
+  }
+
+  synchronized long getIntervalMs() {
+    return intervalMs;
+  }
+
+  synchronized long getChecks() {
+    return checks;
+  }
+
+  synchronized long getChanges() {
+    return changes;
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.PluginConfigurations;
+import com.gojek.gcrpoller.message.PackageMaterialProperties;
+import com.gojek.gcrpoller.util.Jitter;
+import com.gojek.gcrpoller.util.VirtualThreads;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Polls the materials GoCD asks about on its own cadence, so that their last known result in the
+ * {@link GcrPoller} stays current independent of GoCD's material update threads.
+ *
+ * <p>Materials are learned from {@link #register} and kept in a queue ordered by the time their
+ * next poll is due. A dispatcher thread hands due materials to a pool of workers, and materials
+ * GoCD stopped asking about are dropped after the idle timeout. When the poller fetches
+ * asynchronously the workers only start polls, and the number of polls in flight is bounded
+ * instead of the number of threads.
+ */
+public class PollScheduler {
+  private static final int ASYNC_WORKER_THREADS = 2;
+
+  private final Logger logger = Logger.getLoggerFor(PollScheduler.class);
+  private final GcrPoller poller;
+  private final GoogleCredentialService credentialService;
+  private final PollerSettings settings;
+  private final Map<MaterialKey, PolledMaterial> materials = new ConcurrentHashMap<>();
+  private final PriorityQueue<PolledMaterial> queue =
+      new PriorityQueue<>(Comparator.comparingLong(material -> material.nextDueMs));
+  private Semaphore workerPermits;
+  private ExecutorService workers;
+  private Thread dispatcher;
+
+  public PollScheduler(
+      GcrPoller poller, GoogleCredentialService credentialService, PollerSettings settings) {
+    this.poller = poller;
+    this.credentialService = credentialService;
+    this.settings = settings;
+  }
+
+  /** Start polling, unless the poll interval is not set. */
+  public synchronized void start() {
+    if (dispatcher != null || settings.getPollIntervalMs() <= 0) {
+      return;
+    }
+    workerPermits = new Semaphore(settings.getPollThreads());
+    // the worker permits bound the polls in flight, so on virtual threads each poll gets its own
+    workers =
+        settings.isVirtualThreads()
+            ? VirtualThreads.newThreadPerTaskExecutor("gcr-poller-poll-worker")
+            : null;
+    if (workers == null) {
+      workers =
+          Executors.newFixedThreadPool(
+              poller.pollsAsynchronously()
+                  ? Math.min(ASYNC_WORKER_THREADS, settings.getPollThreads())
+                  : settings.getPollThreads(),
+              VirtualThreads.factory("gcr-poller-poll-worker", false));
+    }
+    dispatcher = new Thread(this::dispatch, "gcr-poller-poll-scheduler");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  public synchronized void stop() {
+    if (dispatcher != null) {
+      dispatcher.interrupt();
+      workers.shutdownNow();
+      dispatcher = null;
+      workers = null;
+    }
+  }
+
+  /** Record that GoCD asked about a material, and start polling it if it is not polled yet. */
+  public void register(
+      PackageMaterialProperties packageConfiguration,
+      PackageMaterialProperties repositoryConfiguration) {
+    if (settings.getPollIntervalMs() <= 0) {
+      return;
+    }
+    MaterialKey key = GcrPoller.materialKey(packageConfiguration, repositoryConfiguration);
+    PolledMaterial material = new PolledMaterial(key);
+    PolledMaterial existing = materials.putIfAbsent(key, material);
+    if (existing != null) {
+      existing.requested(packageConfiguration, repositoryConfiguration);
+      return;
+    }
+    material.requested(packageConfiguration, repositoryConfiguration);
+    // GoCD fetched the material itself when it asked, so the first poll is due about an interval
+    // later. The offset of each material within the interval spreads materials GoCD asked about
+    // together over the whole interval.
+    long offsetMs = Jitter.deterministic(key, settings.getPollIntervalMs());
+    schedule(material, System.currentTimeMillis() + settings.getPollIntervalMs() / 2 + offsetMs);
+  }
+
+  int polledMaterialCount() {
+    return materials.size();
+  }
+
+  private void schedule(PolledMaterial material, long dueMs) {
+    synchronized (queue) {
+      material.nextDueMs = dueMs;
+      queue.add(material);
+      queue.notifyAll();
+    }
+  }
+
+  private void dispatch() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        PolledMaterial material = nextDue();
+        workerPermits.acquire();
+        try {
+          workers.execute(
+              () -> poll(material).whenComplete((ignored, e) -> workerPermits.release()));
+        } catch (RuntimeException e) {
+          workerPermits.release();
+          throw e;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      logger.error("Poll scheduler stopped", e);
+    }
+  }
+
+  private PolledMaterial nextDue() throws InterruptedException {
+    synchronized (queue) {
+      while (true) {
+        PolledMaterial head = queue.peek();
+        if (head == null) {
+          queue.wait();
+          continue;
+        }
+        long delayMs = head.nextDueMs - System.currentTimeMillis();
+        if (delayMs <= 0) {
+          return queue.poll();
+        }
+        queue.wait(delayMs);
+      }
+    }
+  }
+
+  /** Poll a material and schedule its next poll. The future completes when the poll is done. */
+  private CompletableFuture<Void> poll(PolledMaterial material) {
+    long now = System.currentTimeMillis();
+    if (now - material.lastRequestedMs > settings.getPollIdleTimeoutMs()) {
+      logger.debug("Stopped polling idle material " + material.key);
+      materials.remove(material.key, material);
+      return CompletableFuture.completedFuture(null);
+    }
+    CompletableFuture<Void> polled;
+    try {
+      String jsonServiceAccount =
+          material
+              .repositoryConfiguration
+              .getProperty(PluginConfigurations.GCP_SERVICE_ACCOUNT)
+              .value();
+      String gcrToken =
+          credentialService
+              .getGcrCredential(jsonServiceAccount)
+              .getAccessToken()
+              .getTokenValue();
+      polled =
+          poller.refreshLatestImageAsync(
+              material.packageConfiguration, material.repositoryConfiguration, gcrToken);
+    } catch (RuntimeException e) {
+      polled = new CompletableFuture<>();
+      polled.completeExceptionally(e);
+    }
+    return polled.handle(
+        (ignored, e) -> {
+          if (e != null) {
+            logger.error("Error while polling material " + material.key, e);
+          }
+          schedule(material, now + settings.getPollIntervalMs());
+          return null;
+        });
+  }
+
+  private static class PolledMaterial {
+    private final MaterialKey key;
+    private volatile PackageMaterialProperties packageConfiguration;
+    private volatile PackageMaterialProperties repositoryConfiguration;
+    private volatile long lastRequestedMs;
+    private long nextDueMs;
+
+    PolledMaterial(MaterialKey key) {
+      this.key = key;
+    }
+
+    void requested(
+        PackageMaterialProperties packageConfiguration,
+        PackageMaterialProperties repositoryConfiguration) {
+      this.packageConfiguration = packageConfiguration;
+      this.repositoryConfiguration = repositoryConfiguration;
+      this.lastRequestedMs = System.currentTimeMillis();
+    }
+  }
+}
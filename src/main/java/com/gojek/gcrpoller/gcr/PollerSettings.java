@@ -0,0 +1,246 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.util.SystemProperties;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/** Settings of a {@link GcrPoller}. */
+@Getter
+public class PollerSettings {
+  private boolean streamingTagsList = false;
+  private int tagsListPageSize = 0;
+  private long snapshotTtlMs = 0;
+  private int snapshotCacheSize = 256;
+  private long maxStalenessMs = 0;
+  private int refreshThreads = 2;
+  private long pollIntervalMs = 0;
+  private int pollThreads = 4;
+  private long pollIdleTimeoutMs = TimeUnit.MINUTES.toMillis(30);
+  private long baseBackoffMs = TimeUnit.MINUTES.toMillis(1);
+  private long maxBackoffMs = 0;
+  private long maxSpreadDelayMs = 0;
+  private int maxConcurrentRequests = 0;
+  private long requestSlotTimeoutMs = TimeUnit.SECONDS.toMillis(30);
+  private int bulkheadThreads = 0;
+  private int bulkheadQueueSize = 20;
+  private long bulkheadTimeoutMs = TimeUnit.MINUTES.toMillis(1);
+  private boolean virtualThreads = false;
+
+  /** Default settings, overridden by {@code gcr.poller.*} system properties. */
+  public static PollerSettings fromSystemProperties() {
+    PollerSettings defaults = new PollerSettings();
+    return new PollerSettings()
+        .withStreamingTagsList(
+            SystemProperties.getBoolean("streamingTagsList", defaults.streamingTagsList))
+        .withTagsListPageSize(
+            SystemProperties.getInt("tagsListPageSize", defaults.tagsListPageSize))
+        .withSnapshotTtlMs(SystemProperties.getLong("snapshotTtlMs", defaults.snapshotTtlMs))
+        .withSnapshotCacheSize(
+            SystemProperties.getInt("snapshotCacheSize", defaults.snapshotCacheSize))
+        .withMaxStalenessMs(SystemProperties.getLong("maxStalenessMs", defaults.maxStalenessMs))
+        .withRefreshThreads(SystemProperties.getInt("refreshThreads", defaults.refreshThreads))
+        .withPollIntervalMs(SystemProperties.getLong("pollIntervalMs", defaults.pollIntervalMs))
+        .withPollThreads(SystemProperties.getInt("pollThreads", defaults.pollThreads))
+        .withPollIdleTimeoutMs(
+            SystemProperties.getLong("pollIdleTimeoutMs", defaults.pollIdleTimeoutMs))
+        .withBaseBackoffMs(SystemProperties.getLong("baseBackoffMs", defaults.baseBackoffMs))
+        .withMaxBackoffMs(SystemProperties.getLong("maxBackoffMs", defaults.maxBackoffMs))
+        .withMaxSpreadDelayMs(
+            SystemProperties.getLong("maxSpreadDelayMs", defaults.maxSpreadDelayMs))
+        .withMaxConcurrentRequests(
+            SystemProperties.getInt("maxConcurrentRequests", defaults.maxConcurrentRequests))
+        .withRequestSlotTimeoutMs(
+            SystemProperties.getLong("requestSlotTimeoutMs", defaults.requestSlotTimeoutMs))
+        .withBulkheadThreads(SystemProperties.getInt("bulkheadThreads", defaults.bulkheadThreads))
+        .withBulkheadQueueSize(
+            SystemProperties.getInt("bulkheadQueueSize", defaults.bulkheadQueueSize))
+        .withBulkheadTimeoutMs(
+            SystemProperties.getLong("bulkheadTimeoutMs", defaults.bulkheadTimeoutMs))
+        .withVirtualThreads(
+            SystemProperties.getBoolean("virtualThreads", defaults.virtualThreads));
+  }
+
+  /**
+   * How old the last known result of a material may be to answer a request. Without an explicit
+   * max staleness, results of the {@link PollScheduler} answer requests for twice the poll
+   * interval, so that enabling the scheduler takes the registry off GoCD's request path instead of
+   * adding to its load.
+   */
+  public long getEffectiveMaxStalenessMs() {
+    if (maxStalenessMs > 0 || pollIntervalMs <= 0) {
+      return maxStalenessMs;
+    }
+    return 2 * pollIntervalMs;
+  }
+
+  /**
+   * Select the latest image while reading tags/list responses instead of parsing them into {@link
+   * ImageTags}. This keeps memory use flat for repositories with many manifests, but responses are
+   * no longer shared between materials with different tag filters.
+   */
+  public PollerSettings withStreamingTagsList(boolean streamingTagsList) {
+    this.streamingTagsList = streamingTagsList;
+    return this;
+  }
+
+  /**
+   * Fetch tags/list in pages of at most this many entries, and select the latest image page by
+   * page. Zero fetches the whole list at once. When enabled this takes precedence over {@link
+   * #withStreamingTagsList(boolean)}, and pages are not shared between materials with different tag
+   * filters.
+   */
+  public PollerSettings withTagsListPageSize(int tagsListPageSize) {
+    this.tagsListPageSize = tagsListPageSize;
+    return this;
+  }
+
+  /**
+   * How long a fetched tags/list snapshot of an image is reused, by all materials of that image,
+   * before it is fetched again. Zero fetches on every poll.
+   */
+  public PollerSettings withSnapshotTtlMs(long snapshotTtlMs) {
+    this.snapshotTtlMs = snapshotTtlMs;
+    return this;
+  }
+
+  /** Maximum number of images whose tags/list snapshot is kept. */
+  public PollerSettings withSnapshotCacheSize(int snapshotCacheSize) {
+    this.snapshotCacheSize = snapshotCacheSize;
+    return this;
+  }
+
+  /**
+   * Answer latest revision requests from the last known result of a material while it is at most
+   * this old, and refresh it in the background. Requests for materials without a known result, or
+   * with an older one, fetch synchronously. Zero always fetches synchronously.
+   */
+  public PollerSettings withMaxStalenessMs(long maxStalenessMs) {
+    this.maxStalenessMs = maxStalenessMs;
+    return this;
+  }
+
+  /** Number of threads refreshing known results in the background. */
+  public PollerSettings withRefreshThreads(int refreshThreads) {
+    this.refreshThreads = refreshThreads;
+    return this;
+  }
+
+  /**
+   * Interval at which the {@link PollScheduler} polls materials that GoCD asked about, keeping
+   * their last known result current. GoCD is answered from those results, see {@link
+   * #getEffectiveMaxStalenessMs()}. Zero disables the scheduler.
+   */
+  public PollerSettings withPollIntervalMs(long pollIntervalMs) {
+    this.pollIntervalMs = pollIntervalMs;
+    return this;
+  }
+
+  /**
+   * Maximum number of materials polled by the {@link PollScheduler} at the same time. Polls of
+   * whole tags/lists are asynchronous and do not hold a thread each.
+   */
+  public PollerSettings withPollThreads(int pollThreads) {
+    this.pollThreads = pollThreads;
+    return this;
+  }
+
+  /** Stop polling materials that GoCD has not asked about for this long. */
+  public PollerSettings withPollIdleTimeoutMs(long pollIdleTimeoutMs) {
+    this.pollIdleTimeoutMs = pollIdleTimeoutMs;
+    return this;
+  }
+
+  /**
+   * How long latest revision since requests of a material are answered with no change, without
+   * checking the registry, after a check first found its image unchanged. The time doubles with
+   * every further unchanged check, up to {@link #withMaxBackoffMs(long)}, and resets when a check
+   * finds a new image.
+   */
+  public PollerSettings withBaseBackoffMs(long baseBackoffMs) {
+    this.baseBackoffMs = baseBackoffMs;
+    return this;
+  }
+
+  /** Longest time a material is not checked while its image does not change. Zero disables. */
+  public PollerSettings withMaxBackoffMs(long maxBackoffMs) {
+    this.maxBackoffMs = maxBackoffMs;
+    return this;
+  }
+
+  /**
+   * Delay the registry requests of each material by up to this long, by an offset derived from the
+   * material, to stagger the bursts of GoCD's material updates. Keep it well below GoCD's plugin
+   * request timeout.
+   */
+  public PollerSettings withMaxSpreadDelayMs(long maxSpreadDelayMs) {
+    this.maxSpreadDelayMs = maxSpreadDelayMs;
+    return this;
+  }
+
+  /** Maximum number of registry requests sent at the same time. Zero does not limit them. */
+  public PollerSettings withMaxConcurrentRequests(int maxConcurrentRequests) {
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    return this;
+  }
+
+  /** How long a registry request waits for one of the concurrent requests to finish. */
+  public PollerSettings withRequestSlotTimeoutMs(long requestSlotTimeoutMs) {
+    this.requestSlotTimeoutMs = requestSlotTimeoutMs;
+    return this;
+  }
+
+  /**
+   * Poll each registry on its own executor with this many threads, so a slow registry cannot hold
+   * up polls of other registries. Zero polls on the calling thread.
+   */
+  public PollerSettings withBulkheadThreads(int bulkheadThreads) {
+    this.bulkheadThreads = bulkheadThreads;
+    return this;
+  }
+
+  /**
+   * Polls of a registry that wait for one of its threads. Further polls are answered with the last
+   * known result of their material, or fail if there is none.
+   */
+  public PollerSettings withBulkheadQueueSize(int bulkheadQueueSize) {
+    this.bulkheadQueueSize = bulkheadQueueSize;
+    return this;
+  }
+
+  /**
+   * How long a request waits for the bulkhead poll of its registry. Requests of a registry that
+   * hangs for longer are answered with the last known result of their material, or fail if there
+   * is none, and the poll is interrupted. Zero waits until the poll finishes.
+   */
+  public PollerSettings withBulkheadTimeoutMs(long bulkheadTimeoutMs) {
+    this.bulkheadTimeoutMs = bulkheadTimeoutMs;
+    return this;
+  }
+
+  /**
+   * Run background refreshes, scheduled polls and bulkhead polls on a virtual thread each on JDK 21
+   * and later. The refresh, poll and bulkhead thread counts then only bound how many run at the
+   * same time, and can be raised to thousands. Older JVMs keep using platform thread pools.
+   */
+  public PollerSettings withVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+    return this;
+  }
+}
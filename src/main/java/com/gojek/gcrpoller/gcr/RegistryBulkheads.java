@@ -0,0 +1,227 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.exception.BulkheadFullException;
+import com.gojek.gcrpoller.exception.PollerException;
+import com.gojek.gcrpoller.exception.RegistryUnavailableException;
+import com.gojek.gcrpoller.util.VirtualThreads;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs the polls of each registry on its own bounded executor, so a slow registry can only tie up
+ * its own threads. Polls beyond the threads and queue of a registry are rejected with {@link
+ * BulkheadFullException} instead of waiting behind the slow ones.
+ *
+ * <p>A poll never outlives the request that started it: when the calling thread is interrupted
+ * while waiting, or gives up waiting after the timeout, the poll is interrupted as well. Timed out
+ * polls fail with {@link RegistryUnavailableException}, so they are answered like polls of a
+ * registry whose bulkhead is full.
+ *
+ * <p>With virtual threads each poll gets a thread of its own instead, and the threads and queue of
+ * a registry are permits of semaphores, so they can be raised to thousands.
+ */
+class RegistryBulkheads {
+  private static final long IDLE_THREAD_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private final int threads;
+  private final int queueSize;
+  private final ExecutorService threadPerTask;
+  private final long timeoutMs;
+  private final ConcurrentMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Permits> permits = new ConcurrentHashMap<>();
+
+  RegistryBulkheads(int threads, int queueSize) {
+    this(threads, queueSize, false);
+  }
+
+  /**
+   * @param threads threads per registry, or 0 to run polls on the calling thread
+   * @param queueSize polls per registry that wait for a thread before further ones are rejected
+   * @param virtualThreads run polls on virtual threads if the JVM supports them
+   */
+  RegistryBulkheads(int threads, int queueSize, boolean virtualThreads) {
+    this(threads, queueSize, virtualThreads, 0);
+  }
+
+  /**
+   * @param threads threads per registry, or 0 to run polls on the calling thread
+   * @param queueSize polls per registry that wait for a thread before further ones are rejected
+   * @param virtualThreads run polls on virtual threads if the JVM supports them
+   * @param timeoutMs how long to wait for a poll, or 0 to wait until it finishes
+   */
+  RegistryBulkheads(int threads, int queueSize, boolean virtualThreads, long timeoutMs) {
+    this(
+        threads,
+        queueSize,
+        virtualThreads && threads > 0
+            ? VirtualThreads.newThreadPerTaskExecutor("gcr-poller-bulkhead")
+            : null,
+        timeoutMs);
+  }
+
+  /**
+   * @param threads polls per registry running at the same time, or 0 to run polls on the calling
+   *     thread
+   * @param queueSize polls per registry that wait to run before further ones are rejected
+   * @param threadPerTask executor starting a thread for each poll, or null to run the polls of each
+   *     registry on a pool of {@code threads} threads
+   * @param timeoutMs how long to wait for a poll, or 0 to wait until it finishes
+   */
+  RegistryBulkheads(int threads, int queueSize, ExecutorService threadPerTask, long timeoutMs) {
+    this.threads = threads;
+    this.queueSize = queueSize;
+    this.threadPerTask = threadPerTask;
+    this.timeoutMs = timeoutMs;
+  }
+
+  static RegistryBulkheads from(PollerSettings settings) {
+    return new RegistryBulkheads(
+        settings.getBulkheadThreads(),
+        settings.getBulkheadQueueSize(),
+        settings.isVirtualThreads(),
+        settings.getBulkheadTimeoutMs());
+  }
+
+  <T> T call(String registryUrl, Supplier<T> poll) {
+    if (threads <= 0) {
+      return poll.get();
+    }
+    Future<T> future;
+    try {
+      future =
+          threadPerTask != null
+              ? submitThreadPerTask(registryUrl, poll)
+              : executor(registryUrl).submit(poll::get);
+    } catch (RejectedExecutionException e) {
+      throw new BulkheadFullException("Too many polls waiting for registry " + registryUrl);
+    }
+    try {
+      return timeoutMs > 0 ? future.get(timeoutMs, TimeUnit.MILLISECONDS) : future.get();
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new RegistryUnavailableException(
+          "Poll of registry " + registryUrl + " did not finish within " + timeoutMs + "ms");
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new PollerException("Interrupted while waiting for poll of " + registryUrl, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new PollerException("Poll of " + registryUrl + " failed", cause);
+    }
+  }
+
+  int queuedPolls(String registryUrl) {
+    Permits registryPermits = permits.get(registryUrl);
+    if (registryPermits != null) {
+      return Math.max(
+          0,
+          queueSize - registryPermits.admitted.availablePermits()
+              + registryPermits.running.availablePermits());
+    }
+    ThreadPoolExecutor executor = executors.get(registryUrl);
+    return executor == null ? 0 : executor.getQueue().size();
+  }
+
+  private <T> Future<T> submitThreadPerTask(String registryUrl, Supplier<T> poll) {
+    Permits registryPermits = permits.computeIfAbsent(registryUrl, url -> new Permits());
+    if (!registryPermits.admitted.tryAcquire()) {
+      throw new RejectedExecutionException();
+    }
+    // the admission permit is returned by the poll, or on cancellation if the poll never started
+    AtomicBoolean started = new AtomicBoolean();
+    FutureTask<T> task =
+        new FutureTask<T>(
+            () -> {
+              if (!started.compareAndSet(false, true)) {
+                throw new CancellationException();
+              }
+              try {
+                registryPermits.running.acquire();
+                try {
+                  return poll.get();
+                } finally {
+                  registryPermits.running.release();
+                }
+              } finally {
+                registryPermits.admitted.release();
+              }
+            }) {
+          @Override
+          protected void done() {
+            if (started.compareAndSet(false, true)) {
+              registryPermits.admitted.release();
+            }
+          }
+        };
+    try {
+      threadPerTask.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.cancel(false);
+      throw e;
+    }
+    return task;
+  }
+
+  private ThreadPoolExecutor executor(String registryUrl) {
+    return executors.computeIfAbsent(
+        registryUrl,
+        url -> {
+          ThreadPoolExecutor executor =
+              new ThreadPoolExecutor(
+                  threads,
+                  threads,
+                  IDLE_THREAD_TIMEOUT_MS,
+                  TimeUnit.MILLISECONDS,
+                  queueSize > 0
+                      ? new ArrayBlockingQueue<>(queueSize)
+                      : new SynchronousQueue<>(),
+                  VirtualThreads.factory("gcr-poller-bulkhead-" + url, false));
+          executor.allowCoreThreadTimeOut(true);
+          return executor;
+        });
+  }
+
+  /** Polls of a registry that are running, and that are either running or waiting to run. */
+  private class Permits {
+    private final Semaphore running = new Semaphore(threads);
+    private final Semaphore admitted = new Semaphore(threads + queueSize);
+  }
+}
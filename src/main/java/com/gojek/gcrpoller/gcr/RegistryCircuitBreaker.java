@@ -0,0 +1,202 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.exception.CircuitOpenException;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker per registry host, so requests fail fast while a host is down instead of each
+ * waiting for its timeout.
+ *
+ * <p>A closed breaker tracks the outcome of the last requests to its host. Requests that fail, get
+ * a server error or take longer than the slow call threshold count as failures, and once the
+ * failure rate reaches the threshold the breaker opens. An open breaker rejects requests until the
+ * open duration has passed, then lets a single trial request through while half-open. The breaker
+ * closes if the trial succeeds and opens again if it fails.
+ */
+public class RegistryCircuitBreaker {
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final Logger logger = Logger.getLoggerFor(RegistryCircuitBreaker.class);
+  private final int failureRateThreshold;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final long openMs;
+  private final long slowCallMs;
+  private final ConcurrentMap<String, HostBreaker> hosts = new ConcurrentHashMap<>();
+  private final AtomicLong openCount = new AtomicLong();
+  private final AtomicLong halfOpenCount = new AtomicLong();
+  private final AtomicLong closeCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  /**
+   * @param failureRateThreshold percentage of failed requests that opens the breaker, or 0 to never
+   *     open it
+   * @param windowSize number of recent requests the failure rate is computed over
+   * @param minimumCalls requests needed in the window before the breaker can open
+   * @param openMs how long the breaker stays open before a trial request
+   * @param slowCallMs requests taking longer than this count as failures
+   */
+  public RegistryCircuitBreaker(
+      int failureRateThreshold, int windowSize, int minimumCalls, long openMs, long slowCallMs) {
+    this.failureRateThreshold = failureRateThreshold;
+    this.windowSize = Math.max(1, windowSize);
+    this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+    this.openMs = openMs;
+    this.slowCallMs = slowCallMs;
+  }
+
+  public static RegistryCircuitBreaker from(TransportSettings settings) {
+    return new RegistryCircuitBreaker(
+        settings.getBreakerFailureRateThreshold(),
+        settings.getBreakerWindowSize(),
+        settings.getBreakerMinimumCalls(),
+        settings.getBreakerOpenMs(),
+        settings.getBreakerSlowCallMs());
+  }
+
+  /** Reserve a request to a host, failing fast with {@link CircuitOpenException} if it is open. */
+  public void acquirePermission(String host) {
+    if (failureRateThreshold <= 0) {
+      return;
+    }
+    if (!breaker(host).tryAcquire(System.currentTimeMillis())) {
+      rejectedCount.incrementAndGet();
+      throw new CircuitOpenException("Circuit breaker of registry " + host + " is open");
+    }
+  }
+
+  /** Record the outcome of a request reserved with {@link #acquirePermission(String)}. */
+  public void record(String host, boolean failed, long elapsedMs) {
+    if (failureRateThreshold <= 0) {
+      return;
+    }
+    breaker(host).record(failed || elapsedMs > slowCallMs, System.currentTimeMillis());
+  }
+
+  public State getState(String host) {
+    HostBreaker breaker = hosts.get(host);
+    return breaker == null ? State.CLOSED : breaker.getState();
+  }
+
+  public long getOpenCount() {
+    return openCount.get();
+  }
+
+  public long getHalfOpenCount() {
+    return halfOpenCount.get();
+  }
+
+  public long getCloseCount() {
+    return closeCount.get();
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  private HostBreaker breaker(String host) {
+    return hosts.computeIfAbsent(host, HostBreaker::new);
+  }
+
+  private class HostBreaker {
+    private final String host;
+    private final boolean[] outcomes = new boolean[windowSize];
+    private int next;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAtMs;
+    private boolean trialInFlight;
+
+    HostBreaker(String host) {
+      this.host = host;
+    }
+
+    synchronized State getState() {
+      return state;
+    }
+
+    synchronized boolean tryAcquire(long nowMs) {
+      if (state == State.OPEN && nowMs - openedAtMs >= openMs) {
+        transition(State.HALF_OPEN, nowMs);
+      }
+      if (state == State.CLOSED) {
+        return true;
+      }
+      if (state == State.HALF_OPEN && !trialInFlight) {
+        trialInFlight = true;
+        return true;
+      }
+      return false;
+    }
+
+    synchronized void record(boolean failed, long nowMs) {
+      if (state == State.HALF_OPEN) {
+        trialInFlight = false;
+        transition(failed ? State.OPEN : State.CLOSED, nowMs);
+        return;
+      }
+      if (state == State.OPEN) {
+        // a request that started before the breaker opened
+        return;
+      }
+      if (calls == windowSize && outcomes[next]) {
+        failures--;
+      }
+      outcomes[next] = failed;
+      next = (next + 1) % windowSize;
+      calls = Math.min(calls + 1, windowSize);
+      if (failed) {
+        failures++;
+      }
+      if (calls >= minimumCalls && failures * 100 >= failureRateThreshold * calls) {
+        transition(State.OPEN, nowMs);
+      }
+    }
+
+    private void transition(State to, long nowMs) {
+      logger.warn(String.format("Circuit breaker of registry %s %s -> %s", host, state, to));
+      state = to;
+      switch (to) {
+        case OPEN:
+          openedAtMs = nowMs;
+          openCount.incrementAndGet();
+          break;
+        case HALF_OPEN:
+          halfOpenCount.incrementAndGet();
+          break;
+        default:
+          next = 0;
+          calls = 0;
+          failures = 0;
+          Arrays.fill(outcomes, false);
+          closeCount.incrementAndGet();
+      }
+    }
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.exception.PollerException;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Limits the rate of requests to each registry host with a token bucket, and pauses a host for as
+ * long as it asks to with {@code Retry-After} when it is rate limiting or unavailable.
+ *
+ * <p>Pauses are logged, and so are long waits together with the {@link WaitMetrics} of their host.
+ */
+public class RegistryRateLimiter {
+  static final int TOO_MANY_REQUESTS = 429;
+  static final int SERVICE_UNAVAILABLE = 503;
+  static final long LONG_WAIT_MS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final Logger logger = Logger.getLoggerFor(RegistryRateLimiter.class);
+
+  private final double requestsPerSecond;
+  private final double burst;
+  private final long maxWaitNanos;
+  private final ConcurrentMap<String, HostLimiter> hosts = new ConcurrentHashMap<>();
+
+  /**
+   * @param requestsPerSecond sustained requests per second to each host, or 0 for no limit
+   * @param burst requests that can be sent at once after the host has been idle
+   * @param maxWaitMs longest time a request waits for the limiter before it fails
+   */
+  public RegistryRateLimiter(double requestsPerSecond, int burst, long maxWaitMs) {
+    this.requestsPerSecond = requestsPerSecond;
+    this.burst = Math.max(1, burst);
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+  }
+
+  public static RegistryRateLimiter from(TransportSettings settings) {
+    return new RegistryRateLimiter(
+        settings.getRequestsPerSecond(), settings.getBurst(), settings.getMaxRateLimitWaitMs());
+  }
+
+  /** A limiter that only honors {@code Retry-After}. */
+  public static RegistryRateLimiter unlimited() {
+    return new RegistryRateLimiter(0, 1, TimeUnit.MINUTES.toMillis(1));
+  }
+
+  /** Wait until a request may be sent to a host. */
+  public void acquire(String host) {
+    long waitMs = reserve(host);
+    if (waitMs <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.MILLISECONDS.sleep(waitMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PollerException("Interrupted while waiting for rate limit of " + host, e);
+    }
+  }
+
+  /**
+   * Reserve a request to a host without waiting, for callers that delay the request themselves.
+   *
+   * @return how long to wait before sending the request, in milliseconds
+   */
+  public long reserve(String host) {
+    HostLimiter limiter = hosts.computeIfAbsent(host, h -> new HostLimiter());
+    long waitNanos = limiter.reserve(System.nanoTime());
+    limiter.recordWait(waitNanos);
+    long waitMs = waitNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos - 1) + 1;
+    if (waitMs >= LONG_WAIT_MS) {
+      logger.info(
+          String.format(
+              "Request to %s waits %dms for the rate limiter, %s",
+              host,
+              waitMs,
+              limiter.metrics()));
+    }
+    return waitMs;
+  }
+
+  /** Pause a host if the response asks to retry later. */
+  public void onResponse(String host, HttpResponse response) {
+    int status = response.getStatusLine().getStatusCode();
+    if (status != TOO_MANY_REQUESTS && status != SERVICE_UNAVAILABLE) {
+      return;
+    }
+    long retryAfterMs = retryAfterMs(response.getFirstHeader("Retry-After"));
+    if (retryAfterMs > 0) {
+      logger.info(
+          String.format(
+              "Pausing requests to %s for %dms after status %d with Retry-After",
+              host,
+              retryAfterMs,
+              status));
+      hosts
+          .computeIfAbsent(host, h -> new HostLimiter())
+          .pauseUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMs));
+    }
+  }
+
+  /** Wait metrics of each host the limiter has seen. */
+  public Map<String, WaitMetrics> getWaitMetrics() {
+    Map<String, WaitMetrics> metrics = new TreeMap<>();
+    hosts.forEach((host, limiter) -> metrics.put(host, limiter.metrics()));
+    return metrics;
+  }
+
+  /**
+   * Delay requested by a {@code Retry-After} header, either in seconds or as an HTTP date.
+   *
+   * @return delay in milliseconds, or 0 if there is none or it cannot be parsed
+   */
+  static long retryAfterMs(Header header) {
+    if (header == null) {
+      return 0;
+    }
+    String value = header.getValue().trim();
+    try {
+      return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+    } catch (NumberFormatException e) {
+      Date date = DateUtils.parseDate(value);
+      return date == null ? 0 : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+  }
+
+  private class HostLimiter {
+    private double tokens = burst;
+    private long refilledAtNanos = System.nanoTime();
+    private long pausedUntilNanos = refilledAtNanos;
+    private long requests;
+    private long waits;
+    private long totalWaitNanos;
+    private long maxWaitNanosSeen;
+
+    /**
+     * Take a token, borrowing it from the future when the bucket is empty.
+     *
+     * @return how long the caller has to wait before sending its request
+     */
+    synchronized long reserve(long nowNanos) {
+      long pausedNanos = Math.max(0, pausedUntilNanos - nowNanos);
+      long waitNanos = pausedNanos;
+      if (requestsPerSecond > 0) {
+        tokens =
+            Math.min(burst, tokens + (nowNanos - refilledAtNanos) * requestsPerSecond / 1e9);
+        refilledAtNanos = nowNanos;
+        long bucketNanos = tokens >= 1 ? 0 : (long) ((1 - tokens) / requestsPerSecond * 1e9);
+        waitNanos = Math.max(waitNanos, bucketNanos);
+        if (waitNanos > maxWaitNanos) {
+          throw rateLimited(waitNanos);
+        }
+        tokens -= 1;
+      } else if (waitNanos > maxWaitNanos) {
+        throw rateLimited(waitNanos);
+      }
+      return waitNanos;
+    }
+
+    synchronized void pauseUntil(long untilNanos) {
+      pausedUntilNanos = Math.max(pausedUntilNanos, untilNanos);
+    }
+
+    synchronized void recordWait(long waitNanos) {
+      requests++;
+      if (waitNanos > 0) {
+        waits++;
+        totalWaitNanos += waitNanos;
+        maxWaitNanosSeen = Math.max(maxWaitNanosSeen, waitNanos);
+      }
+    }
+
+    synchronized WaitMetrics metrics() {
+      return new WaitMetrics(
+          requests,
+          waits,
+          TimeUnit.NANOSECONDS.toMillis(totalWaitNanos),
+          TimeUnit.NANOSECONDS.toMillis(maxWaitNanosSeen));
+    }
+
+    private PollerException rateLimited(long waitNanos) {
+      return new PollerException(
+          "Rate limited for another " + TimeUnit.NANOSECONDS.toMillis(waitNanos) + "ms");
+    }
+  }
+
+  /** How often and how long requests to a host waited for the limiter. */
+  @Value
+  public static class WaitMetrics {
+    long requests;
+    long waitedRequests;
+    long totalWaitMs;
+    long maxWaitMs;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+/**
+ * Status, validators, pagination link and parsed body of a registry response. The body is null for
+ * non-2xx responses.
+ */
+@Value
+@AllArgsConstructor
+public class RegistryResponse<T> {
+  public static final int NOT_MODIFIED = 304;
+
+  int status;
+  T body;
+  CacheValidator validator;
+
+  /** Target of the {@code Link: <...>; rel="next"} header, or null on the last page. */
+  String nextLink;
+
+  public RegistryResponse(int status, T body, CacheValidator validator) {
+    this(status, body, validator, null);
+  }
+
+  public boolean isNotModified() {
+    return status == NOT_MODIFIED;
+  }
+}
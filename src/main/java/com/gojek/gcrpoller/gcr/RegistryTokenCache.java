@@ -0,0 +1,250 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.util.Jitter;
+import com.gojek.gcrpoller.util.LruCache;
+import com.google.common.base.Strings;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.Value;
+import lombok.experimental.NonFinal;
+
+/**
+ * Caches registry bearer tokens until a safety margin before their expiry, as given by the
+ * {@code expires_in} and {@code issued_at} fields of the token response.
+ */
+public class RegistryTokenCache {
+  public static final String PULL_SCOPE = "pull";
+
+  static final int DEFAULT_CACHE_SIZE = 1024;
+  static final long DEFAULT_SAFETY_MARGIN_MS = TimeUnit.MINUTES.toMillis(1);
+  static final long DEFAULT_IDLE_MS = TimeUnit.MINUTES.toMillis(30);
+
+  private final Logger logger = Logger.getLoggerFor(RegistryTokenCache.class);
+  private final LruCache<TokenKey, CachedToken> cache;
+  private final long safetyMarginMs;
+  private final long idleMs;
+
+  public RegistryTokenCache() {
+    this(DEFAULT_CACHE_SIZE, DEFAULT_SAFETY_MARGIN_MS);
+  }
+
+  public RegistryTokenCache(int maxSize, long safetyMarginMs) {
+    this(maxSize, safetyMarginMs, DEFAULT_IDLE_MS);
+  }
+
+  /**
+   * @param maxSize maximum number of cached tokens
+   * @param safetyMarginMs tokens are not used within this long before their expiry
+   * @param idleMs tokens which have not been read for this long are dropped instead of renewed
+   */
+  public RegistryTokenCache(int maxSize, long safetyMarginMs, long idleMs) {
+    this.cache = new LruCache<>(maxSize);
+    this.safetyMarginMs = safetyMarginMs;
+    this.idleMs = idleMs;
+  }
+
+  /**
+   * Get a cached token.
+   *
+   * @param key token key
+   * @return the cached token, or null if there is none or it is about to expire.
+   */
+  public Token get(TokenKey key) {
+    CachedToken cachedToken = cache.get(key);
+    if (cachedToken == null) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    if (!isUsable(cachedToken, now)) {
+      cache.remove(key);
+      return null;
+    }
+    cachedToken.read(now);
+    return cachedToken.getToken();
+  }
+
+  /**
+   * Get a cached token, loading it when there is no usable one. The loader is remembered so that
+   * {@link #refreshExpiring(long, long)} can renew the token before it expires.
+   *
+   * @param key token key
+   * @param loader fetches a new token from the registry
+   * @return a token which is valid for at least the safety margin, if the registry says so.
+   */
+  public Token get(TokenKey key, Supplier<Token> loader) {
+    CachedToken cachedToken = cache.get(key);
+    long now = System.currentTimeMillis();
+    if (cachedToken != null && isUsable(cachedToken, now)) {
+      cachedToken.read(now, loader);
+      return cachedToken.getToken();
+    }
+
+    Token token = loader.get();
+    put(key, token, loader);
+    return token;
+  }
+
+  /**
+   * Cache a token received from the registry. Tokens without usable expiry information, or which
+   * expire within the safety margin, are not cached.
+   *
+   * @param key token key
+   * @param token token returned by the registry
+   */
+  public void put(TokenKey key, Token token) {
+    put(key, token, null);
+  }
+
+  /**
+   * Cache a token received from the registry, remembering the loader so that {@link
+   * #refreshExpiring(long, long)} can renew it.
+   *
+   * @param key token key
+   * @param token token returned by the registry
+   * @param loader fetches a new token from the registry
+   */
+  public void put(TokenKey key, Token token, Supplier<Token> loader) {
+    put(key, token, loader, System.currentTimeMillis());
+  }
+
+  private void put(TokenKey key, Token token, Supplier<Token> loader, long lastReadAtMs) {
+    long now = System.currentTimeMillis();
+    CachedToken cachedToken =
+        new CachedToken(token, expiresAt(token, now), lifetime(token), loader, lastReadAtMs);
+    if (isUsable(cachedToken, now)) {
+      cache.put(key, cachedToken);
+    }
+  }
+
+  /**
+   * Renew tokens which expire within {@code leadMs} plus a per key jitter of up to {@code
+   * maxJitterMs}. The lead time is capped at half of the token lifetime so short lived tokens are
+   * not renewed on every call. Tokens which were cached without a loader are left alone.
+   *
+   * <p>Tokens which have not been read for the idle time are dropped instead, as are tokens which
+   * could not be renewed and are no longer usable, so that abandoned images are not renewed
+   * forever.
+   *
+   * @param leadMs how long before expiry tokens are renewed
+   * @param maxJitterMs upper bound of the per key jitter added to the lead time
+   */
+  public void refreshExpiring(long leadMs, long maxJitterMs) {
+    for (Map.Entry<TokenKey, CachedToken> entry : cache.snapshot().entrySet()) {
+      TokenKey key = entry.getKey();
+      CachedToken cachedToken = entry.getValue();
+      long now = System.currentTimeMillis();
+      if (now - cachedToken.getLastReadAtMs() > idleMs) {
+        cache.remove(key, cachedToken);
+        continue;
+      }
+      if (cachedToken.getLoader() == null) {
+        continue;
+      }
+
+      long lead =
+          Math.min(
+              leadMs + Jitter.deterministic(key, maxJitterMs), cachedToken.getLifetimeMs() / 2);
+      if (cachedToken.getExpiresAtMs() - lead > now) {
+        continue;
+      }
+
+      try {
+        put(
+            key,
+            cachedToken.getLoader().get(),
+            cachedToken.getLoader(),
+            cachedToken.getLastReadAtMs());
+      } catch (RuntimeException e) {
+        if (isUsable(cachedToken, System.currentTimeMillis())) {
+          logger.warn("Unable to refresh registry token for " + key, e);
+        } else {
+          cache.remove(key, cachedToken);
+          logger.warn("Dropping registry token for " + key + " which could not be refreshed", e);
+        }
+      }
+    }
+  }
+
+  public LruCache<TokenKey, CachedToken> getCache() {
+    return cache;
+  }
+
+  private boolean isUsable(CachedToken cachedToken, long now) {
+    return cachedToken.getExpiresAtMs() - safetyMarginMs > now;
+  }
+
+  /**
+   * Compute when a token expires. The earlier of {@code issued_at + expires_in} and {@code
+   * receivedAt + expires_in} is used, so a registry clock running ahead of ours never extends the
+   * lifetime of a token.
+   */
+  static long expiresAt(Token token, long receivedAtMs) {
+    long expiresInMs = lifetime(token);
+    long expiresAt = receivedAtMs + expiresInMs;
+    if (!Strings.isNullOrEmpty(token.getIssuedAt())) {
+      try {
+        long issuedAt = OffsetDateTime.parse(token.getIssuedAt()).toInstant().toEpochMilli();
+        expiresAt = Math.min(expiresAt, issuedAt + expiresInMs);
+      } catch (DateTimeParseException e) {
+        // fall back to the time the token was received
+      }
+    }
+    return expiresAt;
+  }
+
+  private static long lifetime(Token token) {
+    try {
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(token.getExpiresIn()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  @Value
+  public static class TokenKey {
+    String registryUrl;
+    String project;
+    String imageName;
+    String scope;
+  }
+
+  @Value
+  public static class CachedToken {
+    Token token;
+    long expiresAtMs;
+    long lifetimeMs;
+    @NonFinal volatile Supplier<Token> loader;
+    @NonFinal volatile long lastReadAtMs;
+
+    void read(long nowMs) {
+      lastReadAtMs = nowMs;
+    }
+
+    /** Read the token, and renew it with the loader of the latest request from now on. */
+    void read(long nowMs, Supplier<Token> loader) {
+      this.loader = loader;
+      lastReadAtMs = nowMs;
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * HTTP transport used to talk to the registries. Connections are pooled per registry host and kept
+ * alive between polls, and all TLS connections share one SSL context so sessions can be resumed
+ * instead of doing a full handshake for every new connection.
+ */
+public class RegistryTransport implements Closeable {
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final RequestConfig requestConfig;
+  private final CloseableHttpClient httpClient;
+
+  public RegistryTransport() {
+    this(new TransportSettings());
+  }
+
+  public RegistryTransport(TransportSettings settings) {
+    Registry<ConnectionSocketFactory> socketFactories =
+        RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", new SSLConnectionSocketFactory(SSLContexts.createDefault()))
+            .build();
+    connectionManager =
+        new PoolingHttpClientConnectionManager(
+            socketFactories,
+            null,
+            null,
+            null,
+            settings.getConnectionTimeToLiveMs(),
+            TimeUnit.MILLISECONDS);
+    connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerHost());
+    connectionManager.setMaxTotal(settings.getMaxConnectionsTotal());
+
+    requestConfig =
+        RequestConfig.custom()
+            .setConnectTimeout(settings.getConnectTimeoutMs())
+            .setConnectionRequestTimeout(settings.getConnectTimeoutMs())
+            .setSocketTimeout(settings.getReadTimeoutMs())
+            .setStaleConnectionCheckEnabled(true)
+            .build();
+
+    httpClient =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(keepAliveStrategy(settings.getKeepAliveMs()))
+            .build();
+  }
+
+  /**
+   * Send a GET request. The handler is run while the connection is leased, and the connection is
+   * returned to the pool once the handler has consumed the response.
+   *
+   * @param url request url
+   * @param headers request headers
+   * @param handler converts the response
+   * @param <T> result type
+   * @return result of the handler
+   * @throws IOException on connection failures, or when the handler fails to read the response
+   */
+  public <T> T get(String url, Map<String, String> headers, ResponseHandler<? extends T> handler)
+      throws IOException {
+    return get(url, headers, handler, Long.MAX_VALUE, cancellable -> { });
+  }
+
+  /**
+   * Send a GET request whose connect, connection lease and socket timeouts are capped at {@code
+   * timeoutMs}, so that an attempt cannot outlive the deadline of its request.
+   *
+   * @param onSend receives a handle that aborts the request, e.g. once a hedge has won
+   * @see #get(String, Map, ResponseHandler)
+   */
+  public <T> T get(
+      String url,
+      Map<String, String> headers,
+      ResponseHandler<? extends T> handler,
+      long timeoutMs,
+      Consumer<Cancellable> onSend)
+      throws IOException {
+    HttpGet request = new HttpGet(url);
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      request.setHeader(header.getKey(), header.getValue());
+    }
+    request.setConfig(capTimeouts(requestConfig, timeoutMs));
+    onSend.accept(
+        () -> {
+          request.abort();
+          return true;
+        });
+    return httpClient.execute(request, handler);
+  }
+
+  public PoolingHttpClientConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
+  @Override
+  public void close() throws IOException {
+    httpClient.close();
+  }
+
+  /** The config with its timeouts capped at {@code timeoutMs}, at least a millisecond. */
+  static RequestConfig capTimeouts(RequestConfig config, long timeoutMs) {
+    if (timeoutMs >= Integer.MAX_VALUE) {
+      return config;
+    }
+    return RequestConfig.copy(config)
+        .setConnectTimeout(capTimeout(config.getConnectTimeout(), timeoutMs))
+        .setConnectionRequestTimeout(capTimeout(config.getConnectionRequestTimeout(), timeoutMs))
+        .setSocketTimeout(capTimeout(config.getSocketTimeout(), timeoutMs))
+        .build();
+  }
+
+  private static int capTimeout(int timeoutMs, long capMs) {
+    // 0 and negative timeouts wait forever
+    int cap = (int) Math.max(1, capMs);
+    return timeoutMs > 0 ? Math.min(timeoutMs, cap) : cap;
+  }
+
+  /** Use the server's keep-alive timeout when it sends one, otherwise {@code defaultMs}. */
+  static ConnectionKeepAliveStrategy keepAliveStrategy(final long defaultMs) {
+    return new ConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        HeaderElementIterator it =
+            new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+        while (it.hasNext()) {
+          HeaderElement element = it.nextElement();
+          if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+            try {
+              long timeoutMs = TimeUnit.SECONDS.toMillis(Long.parseLong(element.getValue()));
+              return Math.min(timeoutMs, defaultMs);
+            } catch (NumberFormatException e) {
+              break;
+            }
+          }
+        }
+        return defaultMs;
+      }
+    };
+  }
+}
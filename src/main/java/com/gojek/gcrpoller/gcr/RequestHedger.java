@@ -0,0 +1,373 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import org.apache.http.concurrent.Cancellable;
+
+/**
+ * Hedges slow requests: when the response to an attempt has not started within a percentile of
+ * the recent response times of its host, an identical attempt is sent. The first one with an
+ * accepted result is used and the other one is aborted. Hedges are limited to a percentage of all
+ * requests, so they add at most that much load.
+ *
+ * <p>The first attempt is sent on the calling thread. Hedges are launched by a timer on a small
+ * bounded pool, and are skipped while the pool is busy.
+ *
+ * <p>Response times are measured up to the response headers, so that they track how long the
+ * registry stalls rather than how long its tag list is.
+ */
+public class RequestHedger implements Closeable {
+  static final int LATENCY_WINDOW_SIZE = 100;
+  static final int MIN_LATENCY_SAMPLES = 20;
+  private static final double MAX_BUDGET = 10;
+  // hedges in flight at once, as many as the budget allows at its fullest
+  private static final int MAX_HEDGE_THREADS = (int) MAX_BUDGET;
+
+  private static final Attempt UNHEDGED =
+      new Attempt() {
+        @Override
+        public void onSend(Cancellable cancellable) {}
+
+        @Override
+        public void onResponse() {}
+      };
+
+  private final double percentile;
+  private final double budgetPerRequest;
+  private final long minDelayMs;
+  private final ScheduledThreadPoolExecutor timer;
+  private final ThreadPoolExecutor hedgeExecutor;
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong hedgeCount = new AtomicLong();
+  private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+  private double budget;
+
+  /**
+   * @param percentile latency percentile after which a request is hedged, or 0 to never hedge
+   * @param budgetPercent maximum percentage of requests that are hedged
+   * @param minDelayMs minimum time before a request is hedged
+   */
+  public RequestHedger(double percentile, int budgetPercent, long minDelayMs) {
+    this.percentile = percentile;
+    this.budgetPerRequest = budgetPercent / 100.0;
+    this.minDelayMs = minDelayMs;
+    if (percentile > 0) {
+      timer =
+          new ScheduledThreadPoolExecutor(
+              1,
+              runnable -> {
+                Thread thread = new Thread(runnable, "gcr-poller-hedge-timer");
+                thread.setDaemon(true);
+                return thread;
+              });
+      timer.setRemoveOnCancelPolicy(true);
+      hedgeExecutor =
+          new ThreadPoolExecutor(
+              0,
+              MAX_HEDGE_THREADS,
+              1,
+              TimeUnit.MINUTES,
+              new SynchronousQueue<>(),
+              runnable -> {
+                Thread thread = new Thread(runnable, "gcr-poller-hedged-request");
+                thread.setDaemon(true);
+                return thread;
+              });
+    } else {
+      timer = null;
+      hedgeExecutor = null;
+    }
+  }
+
+  public static RequestHedger from(TransportSettings settings) {
+    return new RequestHedger(
+        settings.getHedgePercentile(),
+        settings.getHedgeBudgetPercent(),
+        settings.getHedgeMinDelayMs());
+  }
+
+  public static RequestHedger disabled() {
+    return new RequestHedger(0, 0, 0);
+  }
+
+  /** How an attempt of a request reports its progress to the hedger. */
+  public interface Attempt {
+    /** The attempt was sent, and is aborted with the cancellable once another one has won. */
+    void onSend(Cancellable cancellable);
+
+    /** The response headers have arrived, so the registry is not stalled. */
+    void onResponse();
+  }
+
+  /** A request that may be sent more than once. */
+  public interface Request<T> {
+    T send(Attempt attempt) throws IOException;
+  }
+
+  /**
+   * Send a request on the calling thread, and hedge it if it is slow.
+   *
+   * @param host host the request is sent to, whose latencies decide when to hedge
+   * @param request the request
+   * @param accepted whether a result may win over the other attempt, e.g. a successful response.
+   *     When neither result is accepted, the result of the first attempt is returned
+   * @return result of the winning attempt
+   * @throws IOException if the first attempt failed and the hedge did not win
+   */
+  public <T> T call(String host, Request<T> request, Predicate<? super T> accepted)
+      throws IOException {
+    if (timer == null) {
+      return request.send(UNHEDGED);
+    }
+    requestCount.incrementAndGet();
+    long delayMs = hedgeDelayMs(host);
+    HedgedRequest<T> hedged = new HedgedRequest<>(host, request, accepted);
+    ScheduledFuture<?> hedge =
+        delayMs < 0 ? null : timer.schedule(hedged::hedge, delayMs, TimeUnit.MILLISECONDS);
+    try {
+      return hedged.sendPrimary();
+    } finally {
+      if (hedge != null) {
+        hedge.cancel(false);
+      }
+    }
+  }
+
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  public long getHedgeCount() {
+    return hedgeCount.get();
+  }
+
+  @Override
+  public void close() {
+    if (timer != null) {
+      timer.shutdownNow();
+      hedgeExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Time after which a request to a host is hedged, or -1 while there are too few latency samples
+   * of the host.
+   */
+  long hedgeDelayMs(String host) {
+    synchronized (this) {
+      budget = Math.min(MAX_BUDGET, budget + budgetPerRequest);
+    }
+    LatencyWindow window = latencies.get(host);
+    long latencyMs = window == null ? -1 : window.percentile(percentile);
+    return latencyMs < 0 ? -1 : Math.max(minDelayMs, latencyMs);
+  }
+
+  void recordLatency(String host, long latencyMs) {
+    latencies.computeIfAbsent(host, h -> new LatencyWindow()).record(latencyMs);
+  }
+
+  private synchronized boolean tryTakeBudget() {
+    if (budget < 1) {
+      return false;
+    }
+    budget -= 1;
+    return true;
+  }
+
+  private synchronized void returnBudget() {
+    budget = Math.min(MAX_BUDGET, budget + 1);
+  }
+
+  /** A request whose first attempt may be joined by a hedge. */
+  private final class HedgedRequest<T> {
+    private final String host;
+    private final Request<T> request;
+    private final Predicate<? super T> accepted;
+    private final TrackedAttempt primary = new TrackedAttempt();
+    private TrackedAttempt hedge;
+    private CompletableFuture<T> hedgeResult;
+    private boolean primaryDone;
+
+    HedgedRequest(String host, Request<T> request, Predicate<? super T> accepted) {
+      this.host = host;
+      this.request = request;
+      this.accepted = accepted;
+    }
+
+    /** Run by the timer once the first attempt is late. */
+    void hedge() {
+      synchronized (this) {
+        if (primaryDone || primary.hasResponse() || !tryTakeBudget()) {
+          return;
+        }
+        TrackedAttempt attempt = new TrackedAttempt();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+          hedgeExecutor.execute(
+              () -> {
+                try {
+                  T hedged = send(attempt);
+                  if (accepted.test(hedged)) {
+                    primary.abort();
+                  }
+                  result.complete(hedged);
+                } catch (IOException | RuntimeException e) {
+                  result.completeExceptionally(e);
+                }
+              });
+        } catch (RejectedExecutionException e) {
+          returnBudget();
+          return;
+        }
+        hedgeCount.incrementAndGet();
+        hedge = attempt;
+        hedgeResult = result;
+      }
+    }
+
+    T sendPrimary() throws IOException {
+      T result = null;
+      Exception error = null;
+      try {
+        result = send(primary);
+      } catch (IOException | RuntimeException e) {
+        error = e;
+      }
+      TrackedAttempt otherAttempt;
+      CompletableFuture<T> other;
+      synchronized (this) {
+        primaryDone = true;
+        otherAttempt = hedge;
+        other = hedgeResult;
+      }
+      boolean won = error == null && !primary.isAborted() && accepted.test(result);
+      if (other != null && won) {
+        otherAttempt.abort();
+      } else if (other != null) {
+        try {
+          T hedged = other.get();
+          if (accepted.test(hedged)) {
+            return hedged;
+          }
+        } catch (InterruptedException e) {
+          otherAttempt.abort();
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for registry response");
+        } catch (ExecutionException e) {
+          // neither won, so answer as if the request had not been hedged
+        }
+      }
+      if (error instanceof IOException) {
+        throw (IOException) error;
+      }
+      if (error != null) {
+        throw (RuntimeException) error;
+      }
+      return result;
+    }
+
+    private T send(TrackedAttempt attempt) throws IOException {
+      long startNanos = System.nanoTime();
+      T result = request.send(attempt);
+      // latencies of failures say little about when a successful response is late
+      if (!attempt.isAborted() && accepted.test(result)) {
+        long responseNanos = attempt.hasResponse() ? attempt.responseNanos : System.nanoTime();
+        recordLatency(host, TimeUnit.NANOSECONDS.toMillis(responseNanos - startNanos));
+      }
+      return result;
+    }
+  }
+
+  /** An attempt of a request, which can be aborted while it is sent. */
+  private static final class TrackedAttempt implements Attempt {
+    private volatile Cancellable cancellable;
+    private volatile boolean aborted;
+    private volatile long responseNanos;
+    private volatile boolean responded;
+
+    @Override
+    public void onSend(Cancellable cancellable) {
+      this.cancellable = cancellable;
+      if (aborted) {
+        cancellable.cancel();
+      }
+    }
+
+    @Override
+    public void onResponse() {
+      responseNanos = System.nanoTime();
+      responded = true;
+    }
+
+    boolean hasResponse() {
+      return responded;
+    }
+
+    boolean isAborted() {
+      return aborted;
+    }
+
+    void abort() {
+      aborted = true;
+      Cancellable current = cancellable;
+      if (current != null) {
+        current.cancel();
+      }
+    }
+  }
+
+  /** The most recent latencies of a host. */
+  private static final class LatencyWindow {
+    private final long[] latencies = new long[LATENCY_WINDOW_SIZE];
+    private int next;
+    private int count;
+
+    synchronized void record(long latencyMs) {
+      latencies[next] = latencyMs;
+      next = (next + 1) % LATENCY_WINDOW_SIZE;
+      count = Math.min(count + 1, LATENCY_WINDOW_SIZE);
+    }
+
+    /** The percentile of the latencies, or -1 while there are too few of them. */
+    synchronized long percentile(double percentile) {
+      if (count < MIN_LATENCY_SAMPLES) {
+        return -1;
+      }
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100 * count) - 1;
+      return sorted[Math.max(0, Math.min(index, count - 1))];
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.util.Jitter;
+
+/**
+ * When and after how long to retry a failed registry request. Registry requests are idempotent
+ * GETs, so timeouts, connection errors and statuses that signal a transient failure are retried
+ * with exponential backoff and full jitter, as long as the retry fits in the request's deadline.
+ * The deadline also bounds each attempt: its timeouts are capped at the time left.
+ */
+public class RetryPolicy {
+  private final int maxAttempts;
+  private final long baseBackoffMs;
+  private final long maxBackoffMs;
+  private final long deadlineMs;
+
+  /**
+   * @param maxAttempts attempts per request, including the first one
+   * @param baseBackoffMs upper bound of the backoff before the first retry
+   * @param maxBackoffMs upper bound of the backoff before any retry
+   * @param deadlineMs time after the first attempt by which the request must be answered, or 0
+   *     for no deadline
+   */
+  public RetryPolicy(int maxAttempts, long baseBackoffMs, long maxBackoffMs, long deadlineMs) {
+    this.maxAttempts = maxAttempts;
+    this.baseBackoffMs = baseBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    this.deadlineMs = deadlineMs;
+  }
+
+  public static RetryPolicy from(TransportSettings settings) {
+    return new RetryPolicy(
+        settings.getMaxAttempts(),
+        settings.getRetryBaseBackoffMs(),
+        settings.getRetryMaxBackoffMs(),
+        settings.getRequestDeadlineMs());
+  }
+
+  public static RetryPolicy none() {
+    return new RetryPolicy(1, 0, 0, 0);
+  }
+
+  /** Timeouts, throttling and server errors that are likely to pass. */
+  boolean isRetryable(int status) {
+    return status == 408 || status == 429 || status == 500 || status == 502 || status == 503
+        || status == 504;
+  }
+
+  /** Time after which a request started now stops being retried and its attempt is timed out. */
+  long deadline() {
+    return deadlineMs > 0 ? System.currentTimeMillis() + deadlineMs : Long.MAX_VALUE;
+  }
+
+  /** Time left before the deadline of a request, 0 once it has passed. */
+  static long remainingMs(long deadline) {
+    return Math.max(0, deadline - System.currentTimeMillis());
+  }
+
+  /**
+   * Backoff before retrying a request.
+   *
+   * @param attempt number of attempts made so far
+   * @param deadline {@link #deadline()} of the request
+   * @return backoff in milliseconds, or -1 if the request must not be retried
+   */
+  long backoffMs(int attempt, long deadline) {
+    if (attempt >= maxAttempts) {
+      return -1;
+    }
+    long boundMs = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 30));
+    long backoffMs = Jitter.random(boundMs + 1);
+    return System.currentTimeMillis() + backoffMs < deadline ? backoffMs : -1;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled docker tag filter. A tag matches when the filter's regular expression is found in
+ * it, as with {@link Matcher#find()}.
+ *
+ * <p>The common forms of filters are matched without the regex engine: filters matching every
+ * tag, like {@code .*}, literal prefixes like {@code ^release-.*}, literal suffixes like {@code
+ * .*-prod$} and literals found anywhere in the tag like {@code rc}. Literals may contain letters,
+ * digits, {@code _}, {@code -} and escaped punctuation like {@code \.}. All other filters are
+ * matched by the regular expression.
+ */
+public final class TagFilter {
+  enum Kind {
+    ALL,
+    PREFIX,
+    SUFFIX,
+    CONTAINS,
+    REGEX
+  }
+
+  private final String filter;
+  private final Pattern pattern;
+  private final Kind kind;
+  private final Predicate<String> literalMatcher;
+
+  private TagFilter(String filter, Pattern pattern, Kind kind, String literal) {
+    this.filter = filter;
+    this.pattern = pattern;
+    this.kind = kind;
+    switch (kind) {
+      case ALL:
+        this.literalMatcher = tag -> true;
+        break;
+      case PREFIX:
+        this.literalMatcher = tag -> tag.startsWith(literal);
+        break;
+      case SUFFIX:
+        this.literalMatcher =
+            tag -> tag.endsWith(literal) || (endsWithLineTerminator(tag) && find(tag));
+        break;
+      case CONTAINS:
+        this.literalMatcher = tag -> tag.contains(literal);
+        break;
+      default:
+        this.literalMatcher = null;
+    }
+  }
+
+  /**
+   * Compile a tag filter.
+   *
+   * @param filter regular expression found in matching tags
+   * @throws java.util.regex.PatternSyntaxException if the filter is not a valid regular expression
+   */
+  public static TagFilter compile(String filter) {
+    Pattern pattern = Pattern.compile(filter);
+
+    String body = filter;
+    boolean anchoredStart = body.startsWith("^");
+    if (anchoredStart) {
+      body = body.substring(1);
+    }
+    boolean leadingWildcard = body.startsWith(".*");
+    if (leadingWildcard) {
+      body = body.substring(2);
+    }
+    boolean anchoredEnd = body.endsWith("$") && !isEscaped(body, body.length() - 1);
+    if (anchoredEnd) {
+      body = body.substring(0, body.length() - 1);
+    } else if (body.endsWith(".*") && !isEscaped(body, body.length() - 2)) {
+      body = body.substring(0, body.length() - 2);
+    }
+
+    String literal = unescapeLiteral(body);
+    Kind kind;
+    if (literal == null) {
+      kind = Kind.REGEX;
+    } else if (literal.isEmpty()) {
+      kind = anchoredStart && anchoredEnd ? Kind.REGEX : Kind.ALL;
+    } else if (anchoredEnd) {
+      kind = anchoredStart ? Kind.REGEX : Kind.SUFFIX;
+    } else if (anchoredStart) {
+      // "^.*x" only finds x before the first line terminator
+      kind = leadingWildcard ? Kind.REGEX : Kind.PREFIX;
+    } else {
+      kind = Kind.CONTAINS;
+    }
+    return new TagFilter(filter, pattern, kind, literal);
+  }
+
+  public String getFilter() {
+    return filter;
+  }
+
+  public Pattern getPattern() {
+    return pattern;
+  }
+
+  Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * A matcher of tags against this filter. Matchers of regular expressions keep state between
+   * tags, so a matcher must only be used by one thread at a time.
+   */
+  public Predicate<String> matcher() {
+    if (literalMatcher != null) {
+      return literalMatcher;
+    }
+    Matcher matcher = pattern.matcher("");
+    return tag -> matcher.reset(tag).find();
+  }
+
+  private boolean find(String tag) {
+    return pattern.matcher(tag).find();
+  }
+
+  /** Whether {@code $} may match before the last character of the tag. */
+  private static boolean endsWithLineTerminator(String tag) {
+    if (tag.isEmpty()) {
+      return false;
+    }
+    char last = tag.charAt(tag.length() - 1);
+    return last == '\n'
+        || last == '\r'
+        || last == '\u0085'
+        || last == '\u2028'
+        || last == '\u2029';
+  }
+
+  private static boolean isEscaped(String regex, int index) {
+    int backslashes = 0;
+    for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+      backslashes++;
+    }
+    return backslashes % 2 == 1;
+  }
+
+  /** The literal a regular expression matches, or null if it is not a plain literal. */
+  private static String unescapeLiteral(String regex) {
+    StringBuilder literal = new StringBuilder(regex.length());
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 == regex.length() || !isEscapedPunctuation(regex.charAt(i + 1))) {
+          return null;
+        }
+        literal.append(regex.charAt(++i));
+      } else if (isLiteral(c)) {
+        literal.append(c);
+      } else {
+        return null;
+      }
+    }
+    return literal.toString();
+  }
+
+  private static boolean isLiteral(char c) {
+    return (c >= 'a' && c <= 'z')
+        || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9')
+        || c == '_'
+        || c == '-';
+  }
+
+  private static boolean isEscapedPunctuation(char c) {
+    return c > ' ' && c < 0x7f && !isLiteral(c);
+  }
+
+  @Override
+  public String toString() {
+    return filter;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews cached OAuth credentials and registry tokens in the background, ahead of their expiry,
+ * so that polls do not have to wait for authentication.
+ */
+public class TokenRefresher {
+  static final long DEFAULT_SCAN_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+  static final long DEFAULT_REFRESH_LEAD_MS = TimeUnit.MINUTES.toMillis(10);
+  static final long DEFAULT_MAX_JITTER_MS = TimeUnit.MINUTES.toMillis(5);
+
+  private final Logger logger = Logger.getLoggerFor(TokenRefresher.class);
+  private final GoogleCredentialService credentialService;
+  private final RegistryTokenCache tokenCache;
+  private final long scanIntervalMs;
+  private final long refreshLeadMs;
+  private final long maxJitterMs;
+  private ScheduledExecutorService scheduler;
+
+  public TokenRefresher(GoogleCredentialService credentialService, RegistryTokenCache tokenCache) {
+    this(
+        credentialService,
+        tokenCache,
+        DEFAULT_SCAN_INTERVAL_MS,
+        DEFAULT_REFRESH_LEAD_MS,
+        DEFAULT_MAX_JITTER_MS);
+  }
+
+  public TokenRefresher(
+      GoogleCredentialService credentialService,
+      RegistryTokenCache tokenCache,
+      long scanIntervalMs,
+      long refreshLeadMs,
+      long maxJitterMs) {
+    this.credentialService = credentialService;
+    this.tokenCache = tokenCache;
+    this.scanIntervalMs = scanIntervalMs;
+    this.refreshLeadMs = refreshLeadMs;
+    this.maxJitterMs = maxJitterMs;
+  }
+
+  public synchronized void start() {
+    if (scheduler != null) {
+      return;
+    }
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "gcr-poller-token-refresher");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.scheduleWithFixedDelay(
+        this::refresh, scanIntervalMs, scanIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+  }
+
+  void refresh() {
+    try {
+      // credentials first, registry tokens are fetched with the OAuth access token
+      credentialService.refreshExpiring(refreshLeadMs, maxJitterMs);
+      tokenCache.refreshExpiring(refreshLeadMs, maxJitterMs);
+    } catch (RuntimeException e) {
+      logger.error("Error while refreshing tokens", e);
+    }
+  }
+}
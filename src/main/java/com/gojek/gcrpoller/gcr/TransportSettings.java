@@ -0,0 +1,211 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import com.gojek.gcrpoller.util.SystemProperties;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/** Connection pool and timeout settings of a {@link RegistryTransport}. */
+@Getter
+public class TransportSettings {
+  private int connectTimeoutMs = (int) TimeUnit.SECONDS.toMillis(10);
+  private int readTimeoutMs = (int) TimeUnit.SECONDS.toMillis(60);
+  private int maxConnectionsPerHost = 20;
+  private int maxConnectionsTotal = 100;
+  private long keepAliveMs = TimeUnit.SECONDS.toMillis(60);
+  private long connectionTimeToLiveMs = TimeUnit.MINUTES.toMillis(5);
+  private double requestsPerSecond = 0;
+  private int burst = 10;
+  private long maxRateLimitWaitMs = TimeUnit.SECONDS.toMillis(30);
+  private int maxAttempts = 3;
+  private long retryBaseBackoffMs = 200;
+  private long retryMaxBackoffMs = TimeUnit.SECONDS.toMillis(5);
+  private long requestDeadlineMs = TimeUnit.SECONDS.toMillis(30);
+  private int breakerFailureRateThreshold = 50;
+  private int breakerWindowSize = 20;
+  private int breakerMinimumCalls = 10;
+  private long breakerOpenMs = TimeUnit.SECONDS.toMillis(30);
+  private long breakerSlowCallMs = TimeUnit.SECONDS.toMillis(20);
+  private double hedgePercentile = 0;
+  private int hedgeBudgetPercent = 5;
+  private long hedgeMinDelayMs = 50;
+
+  /** Default settings, overridden by {@code gcr.poller.http.*} system properties. */
+  public static TransportSettings fromSystemProperties() {
+    TransportSettings defaults = new TransportSettings();
+    return new TransportSettings()
+        .withConnectTimeoutMs(
+            SystemProperties.getInt("http.connectTimeoutMs", defaults.connectTimeoutMs))
+        .withReadTimeoutMs(SystemProperties.getInt("http.readTimeoutMs", defaults.readTimeoutMs))
+        .withMaxConnectionsPerHost(
+            SystemProperties.getInt("http.maxConnectionsPerHost", defaults.maxConnectionsPerHost))
+        .withMaxConnectionsTotal(
+            SystemProperties.getInt("http.maxConnectionsTotal", defaults.maxConnectionsTotal))
+        .withKeepAliveMs(SystemProperties.getLong("http.keepAliveMs", defaults.keepAliveMs))
+        .withConnectionTimeToLiveMs(
+            SystemProperties.getLong(
+                "http.connectionTimeToLiveMs", defaults.connectionTimeToLiveMs))
+        .withRequestsPerSecond(
+            SystemProperties.getDouble("http.requestsPerSecond", defaults.requestsPerSecond))
+        .withBurst(SystemProperties.getInt("http.burst", defaults.burst))
+        .withMaxRateLimitWaitMs(
+            SystemProperties.getLong("http.maxRateLimitWaitMs", defaults.maxRateLimitWaitMs))
+        .withMaxAttempts(SystemProperties.getInt("http.maxAttempts", defaults.maxAttempts))
+        .withRetryBaseBackoffMs(
+            SystemProperties.getLong("http.retryBaseBackoffMs", defaults.retryBaseBackoffMs))
+        .withRetryMaxBackoffMs(
+            SystemProperties.getLong("http.retryMaxBackoffMs", defaults.retryMaxBackoffMs))
+        .withRequestDeadlineMs(
+            SystemProperties.getLong("http.requestDeadlineMs", defaults.requestDeadlineMs))
+        .withBreakerFailureRateThreshold(
+            SystemProperties.getInt(
+                "http.breakerFailureRateThreshold", defaults.breakerFailureRateThreshold))
+        .withBreakerWindowSize(
+            SystemProperties.getInt("http.breakerWindowSize", defaults.breakerWindowSize))
+        .withBreakerMinimumCalls(
+            SystemProperties.getInt("http.breakerMinimumCalls", defaults.breakerMinimumCalls))
+        .withBreakerOpenMs(SystemProperties.getLong("http.breakerOpenMs", defaults.breakerOpenMs))
+        .withBreakerSlowCallMs(
+            SystemProperties.getLong("http.breakerSlowCallMs", defaults.breakerSlowCallMs))
+        .withHedgePercentile(
+            SystemProperties.getDouble("http.hedgePercentile", defaults.hedgePercentile))
+        .withHedgeBudgetPercent(
+            SystemProperties.getInt("http.hedgeBudgetPercent", defaults.hedgeBudgetPercent))
+        .withHedgeMinDelayMs(
+            SystemProperties.getLong("http.hedgeMinDelayMs", defaults.hedgeMinDelayMs));
+  }
+
+  public TransportSettings withConnectTimeoutMs(int connectTimeoutMs) {
+    this.connectTimeoutMs = connectTimeoutMs;
+    return this;
+  }
+
+  public TransportSettings withReadTimeoutMs(int readTimeoutMs) {
+    this.readTimeoutMs = readTimeoutMs;
+    return this;
+  }
+
+  public TransportSettings withMaxConnectionsPerHost(int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+    return this;
+  }
+
+  public TransportSettings withMaxConnectionsTotal(int maxConnectionsTotal) {
+    this.maxConnectionsTotal = maxConnectionsTotal;
+    return this;
+  }
+
+  public TransportSettings withKeepAliveMs(long keepAliveMs) {
+    this.keepAliveMs = keepAliveMs;
+    return this;
+  }
+
+  public TransportSettings withConnectionTimeToLiveMs(long connectionTimeToLiveMs) {
+    this.connectionTimeToLiveMs = connectionTimeToLiveMs;
+    return this;
+  }
+
+  /** Sustained requests per second to each registry host. Zero does not limit the rate. */
+  public TransportSettings withRequestsPerSecond(double requestsPerSecond) {
+    this.requestsPerSecond = requestsPerSecond;
+    return this;
+  }
+
+  public TransportSettings withBurst(int burst) {
+    this.burst = burst;
+    return this;
+  }
+
+  public TransportSettings withMaxRateLimitWaitMs(long maxRateLimitWaitMs) {
+    this.maxRateLimitWaitMs = maxRateLimitWaitMs;
+    return this;
+  }
+
+  /** Attempts per registry request, including the first one. One disables retries. */
+  public TransportSettings withMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  public TransportSettings withRetryBaseBackoffMs(long retryBaseBackoffMs) {
+    this.retryBaseBackoffMs = retryBaseBackoffMs;
+    return this;
+  }
+
+  public TransportSettings withRetryMaxBackoffMs(long retryMaxBackoffMs) {
+    this.retryMaxBackoffMs = retryMaxBackoffMs;
+    return this;
+  }
+
+  /**
+   * Time after the first attempt of a registry request by which it must be answered. Attempts are
+   * timed out and no retry is started after it; 0 disables the deadline.
+   */
+  public TransportSettings withRequestDeadlineMs(long requestDeadlineMs) {
+    this.requestDeadlineMs = requestDeadlineMs;
+    return this;
+  }
+
+  /** Percentage of failed requests to a registry host that opens its circuit breaker. */
+  public TransportSettings withBreakerFailureRateThreshold(int breakerFailureRateThreshold) {
+    this.breakerFailureRateThreshold = breakerFailureRateThreshold;
+    return this;
+  }
+
+  public TransportSettings withBreakerWindowSize(int breakerWindowSize) {
+    this.breakerWindowSize = breakerWindowSize;
+    return this;
+  }
+
+  public TransportSettings withBreakerMinimumCalls(int breakerMinimumCalls) {
+    this.breakerMinimumCalls = breakerMinimumCalls;
+    return this;
+  }
+
+  public TransportSettings withBreakerOpenMs(long breakerOpenMs) {
+    this.breakerOpenMs = breakerOpenMs;
+    return this;
+  }
+
+  public TransportSettings withBreakerSlowCallMs(long breakerSlowCallMs) {
+    this.breakerSlowCallMs = breakerSlowCallMs;
+    return this;
+  }
+
+  /**
+   * Send a second tags/list request when the response to an attempt has not started within this
+   * percentile of recent tags/list response times of its registry host, and abort the slower one
+   * once either has succeeded. Zero disables hedging.
+   */
+  public TransportSettings withHedgePercentile(double hedgePercentile) {
+    this.hedgePercentile = hedgePercentile;
+    return this;
+  }
+
+  /** Maximum percentage of tags/list requests that are hedged. */
+  public TransportSettings withHedgeBudgetPercent(int hedgeBudgetPercent) {
+    this.hedgeBudgetPercent = hedgeBudgetPercent;
+    return this;
+  }
+
+  public TransportSettings withHedgeMinDelayMs(long hedgeMinDelayMs) {
+    this.hedgeMinDelayMs = hedgeMinDelayMs;
+    return this;
+  }
+}
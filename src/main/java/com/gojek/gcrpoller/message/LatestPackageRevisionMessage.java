@@ -31,6 +31,16 @@ public class LatestPackageRevisionMessage {
     @SerializedName("package-configuration")
     private Map<String, PackageMaterialProperty> packageConfiguration;
 
+    public LatestPackageRevisionMessage() {
+    }
+
+    LatestPackageRevisionMessage(
+            Map<String, PackageMaterialProperty> repositoryConfiguration,
+            Map<String, PackageMaterialProperty> packageConfiguration) {
+        this.repositoryConfiguration = repositoryConfiguration;
+        this.packageConfiguration = packageConfiguration;
+    }
+
     public PackageMaterialProperties getRepositoryConfiguration() {
         return new PackageMaterialProperties(repositoryConfiguration);
     }
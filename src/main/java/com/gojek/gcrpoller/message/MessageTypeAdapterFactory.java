@@ -0,0 +1,463 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.message;
+
+import com.gojek.gcrpoller.message.CheckConnectionResultMessage.STATUS;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.Expose;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand written Gson adapters of the plugin messages, so that GoCD requests and responses are not
+ * read and written through reflection. Like the reflective adapters they replace, only
+ * {@link Expose}d properties are written, all properties are read and unknown ones are skipped.
+ * Property values use the adapters of the {@link Gson} instance, so its date format applies.
+ */
+public class MessageTypeAdapterFactory implements TypeAdapterFactory {
+
+    private static final TypeToken<Map<String, PackageMaterialProperty>> PROPERTY_MAP =
+            new TypeToken<Map<String, PackageMaterialProperty>>() {};
+    private static final TypeToken<Map<String, String>> STRING_MAP =
+            new TypeToken<Map<String, String>>() {};
+    private static final TypeToken<List<String>> STRING_LIST = new TypeToken<List<String>>() {};
+    private static final TypeToken<List<ValidationError>> VALIDATION_ERROR_LIST =
+            new TypeToken<List<ValidationError>>() {};
+
+    private static final String REPOSITORY_CONFIGURATION = "repository-configuration";
+    private static final String PACKAGE_CONFIGURATION = "package-configuration";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == PackageMaterialProperty.class) {
+            return (TypeAdapter<T>) packageMaterialProperty(gson);
+        }
+        if (rawType == PackageMaterialProperties.class) {
+            return (TypeAdapter<T>) packageMaterialProperties(gson);
+        }
+        if (rawType == PackageRevisionMessage.class) {
+            return (TypeAdapter<T>) packageRevision(gson);
+        }
+        if (rawType == CheckConnectionResultMessage.class) {
+            return (TypeAdapter<T>) checkConnectionResult(gson);
+        }
+        if (rawType == ValidationError.class) {
+            return (TypeAdapter<T>) validationError(gson);
+        }
+        if (rawType == ValidationResultMessage.class) {
+            return (TypeAdapter<T>) validationResult(gson);
+        }
+        if (rawType == LatestPackageRevisionMessage.class) {
+            return (TypeAdapter<T>) latestPackageRevision(gson);
+        }
+        if (rawType == LatestPackageRevisionSinceMessage.class) {
+            return (TypeAdapter<T>) latestPackageRevisionSince(gson);
+        }
+        if (rawType == PackageConnectionMessage.class) {
+            return (TypeAdapter<T>) packageConnection(gson);
+        }
+        if (rawType == ValidatePackageConfigurationMessage.class) {
+            return (TypeAdapter<T>) validatePackageConfiguration(gson);
+        }
+        if (rawType == RepositoryConnectionMessage.class) {
+            return (TypeAdapter<T>) repositoryConnection(gson);
+        }
+        if (rawType == ValidateRepositoryConfigurationMessage.class) {
+            return (TypeAdapter<T>) validateRepositoryConfiguration(gson);
+        }
+        return null;
+    }
+
+    private static TypeAdapter<PackageMaterialProperty> packageMaterialProperty(Gson gson) {
+        return new MessageAdapter<PackageMaterialProperty>() {
+            {
+                property("value", gson.getAdapter(String.class));
+                property("secure", gson.getAdapter(Boolean.class));
+                property("part-of-identity", gson.getAdapter(Boolean.class));
+                property("required", gson.getAdapter(Boolean.class));
+                property("display-name", gson.getAdapter(String.class));
+                property("display-order", gson.getAdapter(String.class));
+            }
+
+            @Override
+            PackageMaterialProperty create(Map<String, Object> values) {
+                return new PackageMaterialProperty()
+                        .withValue(get(values, "value"))
+                        .withSecure(get(values, "secure"))
+                        .withPartOfIdentity(get(values, "part-of-identity"))
+                        .withRequired(get(values, "required"))
+                        .withDisplayName(get(values, "display-name"))
+                        .withDisplayOrder(get(values, "display-order"));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, PackageMaterialProperty property)
+                    throws IOException {
+                write(out, "value", property.value());
+                write(out, "secure", property.secure());
+                write(out, "part-of-identity", property.partOfIdentity());
+                write(out, "required", property.required());
+                write(out, "display-name", property.displayName());
+                write(out, "display-order", property.displayOrder());
+            }
+        };
+    }
+
+    private static TypeAdapter<PackageMaterialProperties> packageMaterialProperties(Gson gson) {
+        return new MessageAdapter<PackageMaterialProperties>() {
+            {
+                property("propertyMap", gson.getAdapter(PROPERTY_MAP));
+            }
+
+            @Override
+            PackageMaterialProperties create(Map<String, Object> values) {
+                return values.containsKey("propertyMap")
+                        ? new PackageMaterialProperties(get(values, "propertyMap"))
+                        : new PackageMaterialProperties();
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, PackageMaterialProperties properties) {
+                // the property map is not exposed
+            }
+        };
+    }
+
+    private static TypeAdapter<PackageRevisionMessage> packageRevision(Gson gson) {
+        return new MessageAdapter<PackageRevisionMessage>() {
+            {
+                property("revision", gson.getAdapter(String.class));
+                property("timestamp", gson.getAdapter(Date.class));
+                property("user", gson.getAdapter(String.class));
+                property("revisionComment", gson.getAdapter(String.class));
+                property("trackbackUrl", gson.getAdapter(String.class));
+                property("data", gson.getAdapter(STRING_MAP));
+            }
+
+            @Override
+            PackageRevisionMessage create(Map<String, Object> values) {
+                PackageRevisionMessage revision =
+                        new PackageRevisionMessage(
+                                get(values, "revision"),
+                                get(values, "timestamp"),
+                                get(values, "user"),
+                                get(values, "revisionComment"),
+                                get(values, "trackbackUrl"));
+                Map<String, String> data = get(values, "data");
+                if (data != null) {
+                    for (Map.Entry<String, String> entry : data.entrySet()) {
+                        revision.addData(entry.getKey(), entry.getValue());
+                    }
+                }
+                return revision;
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, PackageRevisionMessage revision)
+                    throws IOException {
+                write(out, "revision", revision.getRevision());
+                write(out, "timestamp", revision.getTimestamp());
+                write(out, "user", revision.getUser());
+                write(out, "revisionComment", revision.getRevisionComment());
+                write(out, "trackbackUrl", revision.getTrackbackUrl());
+            }
+        };
+    }
+
+    private static TypeAdapter<CheckConnectionResultMessage> checkConnectionResult(Gson gson) {
+        return new MessageAdapter<CheckConnectionResultMessage>() {
+            {
+                property("status", gson.getAdapter(STATUS.class));
+                property("messages", gson.getAdapter(STRING_LIST));
+            }
+
+            @Override
+            CheckConnectionResultMessage create(Map<String, Object> values) {
+                return new CheckConnectionResultMessage(
+                        get(values, "status"), get(values, "messages"));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, CheckConnectionResultMessage result)
+                    throws IOException {
+                write(out, "status", result.getStatus());
+                write(out, "messages", result.getMessages());
+            }
+        };
+    }
+
+    private static TypeAdapter<ValidationError> validationError(Gson gson) {
+        return new MessageAdapter<ValidationError>() {
+            {
+                property("key", gson.getAdapter(String.class));
+                property("message", gson.getAdapter(String.class));
+            }
+
+            @Override
+            ValidationError create(Map<String, Object> values) {
+                return ValidationError.create(get(values, "key"), get(values, "message"));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, ValidationError error) throws IOException {
+                write(out, "key", error.getKey());
+                write(out, "message", error.getMessage());
+            }
+        };
+    }
+
+    private static TypeAdapter<ValidationResultMessage> validationResult(Gson gson) {
+        return new MessageAdapter<ValidationResultMessage>() {
+            {
+                property("validationErrors", gson.getAdapter(VALIDATION_ERROR_LIST));
+            }
+
+            @Override
+            ValidationResultMessage create(Map<String, Object> values) {
+                ValidationResultMessage result = new ValidationResultMessage();
+                List<ValidationError> errors = get(values, "validationErrors");
+                if (errors != null) {
+                    for (ValidationError error : errors) {
+                        result.addError(error);
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, ValidationResultMessage result) {
+                // the validation errors are not exposed
+            }
+        };
+    }
+
+    private static TypeAdapter<LatestPackageRevisionMessage> latestPackageRevision(Gson gson) {
+        return new MessageAdapter<LatestPackageRevisionMessage>() {
+            {
+                property(REPOSITORY_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+                property(PACKAGE_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+            }
+
+            @Override
+            LatestPackageRevisionMessage create(Map<String, Object> values) {
+                return new LatestPackageRevisionMessage(
+                        get(values, REPOSITORY_CONFIGURATION), get(values, PACKAGE_CONFIGURATION));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, LatestPackageRevisionMessage message)
+                    throws IOException {
+                write(out, REPOSITORY_CONFIGURATION,
+                        message.getRepositoryConfiguration().getPropertyMap());
+                write(out, PACKAGE_CONFIGURATION,
+                        message.getPackageConfiguration().getPropertyMap());
+            }
+        };
+    }
+
+    private static TypeAdapter<LatestPackageRevisionSinceMessage> latestPackageRevisionSince(
+            Gson gson) {
+        return new MessageAdapter<LatestPackageRevisionSinceMessage>() {
+            {
+                property(REPOSITORY_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+                property(PACKAGE_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+                property("previous-revision", gson.getAdapter(PackageRevisionMessage.class));
+            }
+
+            @Override
+            LatestPackageRevisionSinceMessage create(Map<String, Object> values) {
+                return new LatestPackageRevisionSinceMessage(
+                        get(values, REPOSITORY_CONFIGURATION),
+                        get(values, PACKAGE_CONFIGURATION),
+                        get(values, "previous-revision"));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, LatestPackageRevisionSinceMessage message)
+                    throws IOException {
+                write(out, REPOSITORY_CONFIGURATION,
+                        message.getRepositoryConfiguration().getPropertyMap());
+                write(out, PACKAGE_CONFIGURATION,
+                        message.getPackageConfiguration().getPropertyMap());
+                write(out, "previous-revision", message.getPreviousRevision());
+            }
+        };
+    }
+
+    private static TypeAdapter<PackageConnectionMessage> packageConnection(Gson gson) {
+        return new MessageAdapter<PackageConnectionMessage>() {
+            {
+                property(REPOSITORY_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+                property(PACKAGE_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+            }
+
+            @Override
+            PackageConnectionMessage create(Map<String, Object> values) {
+                return new PackageConnectionMessage(
+                        get(values, REPOSITORY_CONFIGURATION), get(values, PACKAGE_CONFIGURATION));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, PackageConnectionMessage message)
+                    throws IOException {
+                write(out, REPOSITORY_CONFIGURATION,
+                        message.getRepositoryConfiguration().getPropertyMap());
+                write(out, PACKAGE_CONFIGURATION,
+                        message.getPackageConfiguration().getPropertyMap());
+            }
+        };
+    }
+
+    private static TypeAdapter<ValidatePackageConfigurationMessage> validatePackageConfiguration(
+            Gson gson) {
+        return new MessageAdapter<ValidatePackageConfigurationMessage>() {
+            {
+                property(REPOSITORY_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+                property(PACKAGE_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+            }
+
+            @Override
+            ValidatePackageConfigurationMessage create(Map<String, Object> values) {
+                return new ValidatePackageConfigurationMessage(
+                        get(values, REPOSITORY_CONFIGURATION), get(values, PACKAGE_CONFIGURATION));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, ValidatePackageConfigurationMessage message)
+                    throws IOException {
+                write(out, REPOSITORY_CONFIGURATION,
+                        message.getRepositoryConfiguration().getPropertyMap());
+                write(out, PACKAGE_CONFIGURATION,
+                        message.getPackageConfiguration().getPropertyMap());
+            }
+        };
+    }
+
+    private static TypeAdapter<RepositoryConnectionMessage> repositoryConnection(Gson gson) {
+        return new MessageAdapter<RepositoryConnectionMessage>() {
+            {
+                property(REPOSITORY_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+            }
+
+            @Override
+            RepositoryConnectionMessage create(Map<String, Object> values) {
+                return new RepositoryConnectionMessage(get(values, REPOSITORY_CONFIGURATION));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, RepositoryConnectionMessage message)
+                    throws IOException {
+                write(out, REPOSITORY_CONFIGURATION,
+                        message.getRepositoryConfiguration().getPropertyMap());
+            }
+        };
+    }
+
+    private static TypeAdapter<ValidateRepositoryConfigurationMessage>
+            validateRepositoryConfiguration(Gson gson) {
+        return new MessageAdapter<ValidateRepositoryConfigurationMessage>() {
+            {
+                property(REPOSITORY_CONFIGURATION, gson.getAdapter(PROPERTY_MAP));
+            }
+
+            @Override
+            ValidateRepositoryConfigurationMessage create(Map<String, Object> values) {
+                return new ValidateRepositoryConfigurationMessage(
+                        get(values, REPOSITORY_CONFIGURATION));
+            }
+
+            @Override
+            void writeProperties(JsonWriter out, ValidateRepositoryConfigurationMessage message)
+                    throws IOException {
+                write(out, REPOSITORY_CONFIGURATION,
+                        message.getRepositoryConfiguration().getPropertyMap());
+            }
+        };
+    }
+
+    /**
+     * Adapter of a message with named properties. Properties are read into a map by name and the
+     * message is created from it. Null properties are written as null, which the writer drops
+     * unless it serializes nulls.
+     */
+    private abstract static class MessageAdapter<M> extends TypeAdapter<M> {
+        private final Map<String, TypeAdapter<?>> properties = new HashMap<>();
+
+        void property(String name, TypeAdapter<?> adapter) {
+            properties.put(name, adapter);
+        }
+
+        abstract M create(Map<String, Object> values);
+
+        abstract void writeProperties(JsonWriter out, M message) throws IOException;
+
+        @Override
+        public M read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Map<String, Object> values = new HashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                TypeAdapter<?> adapter = properties.get(name);
+                if (adapter == null) {
+                    in.skipValue();
+                } else {
+                    values.put(name, adapter.read(in));
+                }
+            }
+            in.endObject();
+            return create(values);
+        }
+
+        @Override
+        public void write(JsonWriter out, M message) throws IOException {
+            if (message == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeProperties(out, message);
+            out.endObject();
+        }
+
+        @SuppressWarnings("unchecked")
+        <V> void write(JsonWriter out, String name, V value) throws IOException {
+            out.name(name);
+            ((TypeAdapter<V>) properties.get(name)).write(out, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <V> V get(Map<String, Object> values, String name) {
+            return (V) values.get(name);
+        }
+    }
+}
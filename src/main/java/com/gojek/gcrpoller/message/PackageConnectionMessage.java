@@ -30,6 +30,16 @@ public class PackageConnectionMessage {
     @SerializedName("package-configuration")
     private Map<String,PackageMaterialProperty> packageConfiguration;
 
+    public PackageConnectionMessage() {
+    }
+
+    PackageConnectionMessage(
+            Map<String, PackageMaterialProperty> repositoryConfiguration,
+            Map<String, PackageMaterialProperty> packageConfiguration) {
+        this.repositoryConfiguration = repositoryConfiguration;
+        this.packageConfiguration = packageConfiguration;
+    }
+
     public PackageMaterialProperties getRepositoryConfiguration() {
         return new PackageMaterialProperties(repositoryConfiguration);
     }
@@ -27,6 +27,13 @@ public class RepositoryConnectionMessage {
     @SerializedName("repository-configuration")
     private Map<String,PackageMaterialProperty> repositoryConfiguration;
 
+    public RepositoryConnectionMessage() {
+    }
+
+    RepositoryConnectionMessage(Map<String, PackageMaterialProperty> repositoryConfiguration) {
+        this.repositoryConfiguration = repositoryConfiguration;
+    }
+
     public PackageMaterialProperties getRepositoryConfiguration() {
         return new PackageMaterialProperties(repositoryConfiguration);
     }
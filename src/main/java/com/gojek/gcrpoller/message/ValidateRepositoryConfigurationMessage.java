@@ -27,6 +27,13 @@ public class ValidateRepositoryConfigurationMessage {
     @SerializedName("repository-configuration")
     private Map<String, PackageMaterialProperty> repositoryConfigurationMap;
 
+    public ValidateRepositoryConfigurationMessage() {
+    }
+
+    ValidateRepositoryConfigurationMessage(
+            Map<String, PackageMaterialProperty> repositoryConfigurationMap) {
+        this.repositoryConfigurationMap = repositoryConfigurationMap;
+    }
 
     public PackageMaterialProperties getRepositoryConfiguration() {
         return new PackageMaterialProperties(repositoryConfigurationMap);
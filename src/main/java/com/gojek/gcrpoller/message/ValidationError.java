@@ -40,6 +40,10 @@ public class ValidationError {
         return new ValidationError(key, message);
     }
 
+    public String getKey() {
+        return key;
+    }
+
     public String getMessage() {
         return message;
     }
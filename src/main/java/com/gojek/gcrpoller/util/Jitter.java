@@ -0,0 +1,55 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Jitter {
+
+  private Jitter() {}
+
+  /**
+   * Jitter derived from a key, so the same key always gets the same offset while different keys
+   * are spread over the whole range.
+   *
+   * @param key key to derive the offset from
+   * @param boundMs exclusive upper bound in milliseconds
+   * @return offset in [0, boundMs), or 0 if boundMs is not positive
+   */
+  public static long deterministic(Object key, long boundMs) {
+    if (boundMs <= 0) {
+      return 0;
+    }
+    // spread the bits of poorly distributed hash codes before reducing them
+    long hash = key.hashCode() * 0x9E3779B97F4A7C15L;
+    return Math.floorMod(hash ^ (hash >>> 32), boundMs);
+  }
+
+  /**
+   * Uniformly distributed random jitter.
+   *
+   * @param boundMs exclusive upper bound in milliseconds
+   * @return offset in [0, boundMs), or 0 if boundMs is not positive
+   */
+  public static long random(long boundMs) {
+    if (boundMs <= 0) {
+      return 0;
+    }
+    return ThreadLocalRandom.current().nextLong(boundMs);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.util;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+/**
+ * Reads plugin tuning options from JVM system properties of the GoCD server, e.g. {@code
+ * -Dgcr.poller.http.maxConnectionsPerHost=50}. Missing or malformed values fall back to the
+ * default.
+ */
+public class SystemProperties {
+  public static final String PREFIX = "gcr.poller.";
+
+  private static final Logger logger = Logger.getLoggerFor(SystemProperties.class);
+
+  private SystemProperties() {}
+
+  public static int getInt(String name, int defaultValue) {
+    return (int) getLong(name, defaultValue);
+  }
+
+  public static long getLong(String name, long defaultValue) {
+    String value = System.getProperty(PREFIX + name);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      logger.warn("Ignoring invalid value " + value + " for " + PREFIX + name);
+      return defaultValue;
+    }
+  }
+
+  public static double getDouble(String name, double defaultValue) {
+    String value = System.getProperty(PREFIX + name);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      logger.warn("Ignoring invalid value " + value + " for " + PREFIX + name);
+      return defaultValue;
+    }
+  }
+
+  public static boolean getBoolean(String name, boolean defaultValue) {
+    String value = System.getProperty(PREFIX + name);
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    return Boolean.parseBoolean(value.trim());
+  }
+}
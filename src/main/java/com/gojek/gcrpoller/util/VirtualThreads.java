@@ -0,0 +1,111 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.util;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Threads for blocking registry I/O. On JDK 21 and later these can be virtual threads, which are
+ * looked up reflectively since the plugin is built for Java 8. On older JVMs daemon platform
+ * threads are used instead.
+ */
+public class VirtualThreads {
+  private static final Logger logger = Logger.getLoggerFor(VirtualThreads.class);
+  private static final Method OF_VIRTUAL = ofVirtual();
+
+  private VirtualThreads() {}
+
+  /** Whether this JVM supports virtual threads. */
+  public static boolean isSupported() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Create a thread factory.
+   *
+   * @param name name of the threads
+   * @param virtual create virtual threads if the JVM supports them
+   * @return a factory of virtual threads, or of daemon platform threads
+   */
+  public static ThreadFactory factory(String name, boolean virtual) {
+    if (virtual) {
+      ThreadFactory factory = virtualFactory(name);
+      if (factory != null) {
+        return factory;
+      }
+      logger.warn("Virtual threads are not supported by this JVM, using platform threads");
+    }
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Create an executor starting a new virtual thread for each task. Its concurrency is not bounded,
+   * so callers bound it themselves, e.g. with a {@link java.util.concurrent.Semaphore}.
+   *
+   * @param name name of the threads
+   * @return the executor, or null if the JVM does not support virtual threads
+   */
+  public static ExecutorService newThreadPerTaskExecutor(String name) {
+    ThreadFactory factory = virtualFactory(name);
+    if (factory == null) {
+      logger.warn("Virtual threads are not supported by this JVM, using platform threads");
+      return null;
+    }
+    try {
+      return (ExecutorService)
+          Executors.class
+              .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+              .invoke(null, factory);
+    } catch (ReflectiveOperationException e) {
+      logger.warn("Unable to create a thread per task executor", e);
+      return null;
+    }
+  }
+
+  private static ThreadFactory virtualFactory(String name) {
+    if (OF_VIRTUAL == null) {
+      return null;
+    }
+    try {
+      // the builder implementations are not public, so call through the public interfaces
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = OF_VIRTUAL.invoke(null);
+      builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      logger.warn("Unable to create virtual threads", e);
+      return null;
+    }
+  }
+
+  private static Method ofVirtual() {
+    try {
+      return Thread.class.getMethod("ofVirtual");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+}
@@ -22,13 +22,27 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import com.gojek.gcrpoller.message.CheckConnectionResultMessage;
+import com.gojek.gcrpoller.message.CheckConnectionResultMessage.STATUS;
+import com.gojek.gcrpoller.message.LatestPackageRevisionMessage;
 import com.gojek.gcrpoller.message.LatestPackageRevisionSinceMessage;
+import com.gojek.gcrpoller.message.PackageConnectionMessage;
 import com.gojek.gcrpoller.message.PackageMaterialProperty;
 import com.gojek.gcrpoller.message.PackageRevisionMessage;
+import com.gojek.gcrpoller.message.RepositoryConnectionMessage;
+import com.gojek.gcrpoller.message.ValidatePackageConfigurationMessage;
+import com.gojek.gcrpoller.message.ValidateRepositoryConfigurationMessage;
+import com.gojek.gcrpoller.message.ValidationError;
+import com.gojek.gcrpoller.message.ValidationResultMessage;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import org.junit.Test;
 
@@ -89,6 +103,83 @@ public class JsonUtilTest {
     assertThat(actual.getPreviousRevision(), is(expected.getPreviousRevision()));
   }
 
+  @Test
+  public void shouldWriteMessagesLikeReflectiveGson() {
+    Gson reflective = new GsonBuilder()
+        .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+        .excludeFieldsWithoutExposeAnnotation()
+        .create();
+    PackageRevisionMessage revision =
+        new PackageRevisionMessage("1.0", Date.from(Instant.ofEpochMilli(42)), "", null, "url");
+    revision.addData("VERSION", "1.0");
+    ValidationResultMessage validationResult = new ValidationResultMessage();
+    validationResult.addError(ValidationError.create("KEY", "invalid"));
+
+    for (Object message : Arrays.asList(
+        revision,
+        sampleConfiguration(),
+        new CheckConnectionResultMessage(STATUS.FAILURE, Collections.singletonList("failed")),
+        validationResult.getValidationErrors(),
+        validationResult,
+        new LatestPackageRevisionSinceMessage(sampleConfiguration(), null, revision))) {
+      assertEquals(reflective.toJson(message), JsonUtil.toJsonString(message));
+    }
+  }
+
+  @Test
+  public void shouldReadMessagesLikeReflectiveGson() {
+    Gson reflective = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").create();
+    String configuration = reflective.toJson(sampleConfiguration());
+    String revision = "{\"revision\":\"1.0\",\"timestamp\":\"2019-01-01T10:00:00.000Z\","
+        + "\"unknown\":[1,{}],\"data\":{\"VERSION\":\"1.0\"}}";
+    Map<Class<?>, String> requests = new LinkedHashMap<>();
+    requests.put(PackageRevisionMessage.class, revision);
+    requests.put(
+        LatestPackageRevisionSinceMessage.class,
+        String.format(
+            "{\"repository-configuration\":%s,\"package-configuration\":%s,"
+                + "\"previous-revision\":%s}",
+            configuration, configuration, revision));
+    requests.put(
+        LatestPackageRevisionMessage.class,
+        String.format("{\"repository-configuration\":%s}", configuration));
+    requests.put(
+        PackageConnectionMessage.class,
+        String.format("{\"package-configuration\":%s}", configuration));
+    requests.put(
+        ValidatePackageConfigurationMessage.class,
+        "{\"package-configuration\":null}");
+    requests.put(
+        RepositoryConnectionMessage.class,
+        String.format("{\"repository-configuration\":%s}", configuration));
+    requests.put(
+        ValidateRepositoryConfigurationMessage.class,
+        String.format("{\"repository-configuration\":%s}", configuration));
+    requests.put(
+        CheckConnectionResultMessage.class, "{\"status\":\"SUCCESS\",\"messages\":[\"ok\"]}");
+    requests.put(ValidationError.class, "{\"key\":\"KEY\",\"message\":\"invalid\"}");
+
+    for (Map.Entry<Class<?>, String> request : requests.entrySet()) {
+      assertEquals(
+          reflective.toJson(reflective.fromJson(request.getValue(), request.getKey())),
+          reflective.toJson(JsonUtil.fromJsonString(request.getValue(), request.getKey())));
+    }
+  }
+
+  private Map<String, PackageMaterialProperty> sampleConfiguration() {
+    Map<String, PackageMaterialProperty> configuration = new LinkedHashMap<>();
+    configuration.put("DOCKER_IMAGE", new PackageMaterialProperty().withValue("image"));
+    configuration.put(
+        "GCP_SERVICE_ACCOUNT",
+        new PackageMaterialProperty()
+            .withSecure(true)
+            .withPartOfIdentity(false)
+            .withRequired(true)
+            .withDisplayName("Service account")
+            .withDisplayOrder("0"));
+    return configuration;
+  }
+
   private boolean isConfigEqual(Map<String, PackageMaterialProperty> config, Map<String, PackageMaterialProperty> other) {
     if (!config.keySet().equals(other.keySet())) {
       return false;
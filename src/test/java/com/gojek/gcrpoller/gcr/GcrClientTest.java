@@ -19,6 +19,7 @@ package com.gojek.gcrpoller.gcr;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertTrue;
 
 import com.gojek.gcrpoller.JsonUtil;
 import com.gojek.gcrpoller.exception.InvalidCredentialException;
@@ -28,9 +29,12 @@ import com.google.common.io.Resources;
 import com.mashape.unirest.http.utils.URLParamEncoder;
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -77,6 +81,115 @@ public class GcrClientTest {
                 URLParamEncoder.encode(url))));
   }
 
+  @Test
+  public void shouldPauseRegistryThatRespondsWithRetryAfter() throws IOException {
+    gcrClient.close();
+    gcrClient = new GcrClient(new RegistryTransport(), new RegistryRateLimiter(0, 1, 100));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "60"));
+
+    try {
+      gcrClient.getImageTags(url, "project", "image", "token");
+    } catch (PollerException e) {
+      // rate limited
+    }
+
+    try {
+      gcrClient.getImageTags(url, "project", "image", "token");
+    } catch (PollerException e) {
+      assertThat(mockWebServer.getRequestCount(), equalTo(1));
+      return;
+    }
+    throw new AssertionError("request should not be sent while the registry is paused");
+  }
+
+  @Test
+  public void shouldNotOpenCircuitBreakerWhileRegistryIsPaused() throws IOException {
+    gcrClient.close();
+    gcrClient =
+        new GcrClient(
+            new RegistryTransport(),
+            new RegistryRateLimiter(0, 1, 5000),
+            new RetryPolicy(1, 10, 10, 5000),
+            new RegistryCircuitBreaker(50, 10, 1, 60000, 500));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+    mockWebServer.enqueue(new MockResponse().setBody("{}"));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "60"));
+
+    try {
+      gcrClient.getImageTags(url, "project", "image", "token");
+    } catch (PollerException e) {
+      // paused for a second
+    }
+    gcrClient.getImageTags(url, "project", "image", "token");
+    try {
+      gcrClient.getImageTags(url, "project", "image", "token");
+    } catch (PollerException e) {
+      // paused for a minute
+    }
+    try {
+      gcrClient.getImageTags(url, "project", "image", "token");
+    } catch (PollerException e) {
+      // rejected by the rate limiter
+    }
+
+    assertThat(mockWebServer.getRequestCount(), equalTo(3));
+    assertThat(
+        gcrClient.getCircuitBreaker().getState(url),
+        equalTo(RegistryCircuitBreaker.State.CLOSED));
+  }
+
+  @Test
+  public void shouldRetryTransientFailures() throws IOException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    mockWebServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+    mockWebServer.enqueue(new MockResponse().setBody(imageTagResp));
+
+    ImageTags imageTags = gcrClient.getImageTags(url, "project", "image", "token");
+
+    assertThat(imageTags, equalTo(JsonUtil.fromJsonString(imageTagResp, ImageTags.class)));
+    assertThat(mockWebServer.getRequestCount(), equalTo(3));
+  }
+
+  @Test
+  public void shouldTimeOutAttemptsAtRequestDeadline() throws IOException {
+    gcrClient.close();
+    gcrClient =
+        new GcrClient(
+            new RegistryTransport(),
+            RegistryRateLimiter.unlimited(),
+            new RetryPolicy(3, 10, 10, 300));
+    mockWebServer.enqueue(new MockResponse().setBody("{}").setBodyDelay(5, TimeUnit.SECONDS));
+
+    long startMs = System.currentTimeMillis();
+    try {
+      gcrClient.getImageTags(url, "project", "image", "token");
+      throw new AssertionError("request should time out at its deadline");
+    } catch (PollerException e) {
+      long elapsedMs = System.currentTimeMillis() - startMs;
+      assertTrue("request took " + elapsedMs + "ms", elapsedMs < 2000);
+    }
+  }
+
+  @Test(expected = PollerException.class)
+  public void shouldFailOnceRetriesAreExhausted() throws IOException {
+    gcrClient.close();
+    gcrClient =
+        new GcrClient(
+            new RegistryTransport(),
+            RegistryRateLimiter.unlimited(),
+            new RetryPolicy(2, 10, 10, 1000));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(502));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(502));
+
+    try {
+      gcrClient.getImageTags(url, "project", "image", "token");
+    } finally {
+      assertThat(mockWebServer.getRequestCount(), equalTo(2));
+    }
+  }
+
   @Test(expected = InvalidCredentialException.class)
   public void getCatalogAccessTokenShouldThrowInvalidCredentialExceptionIfResponseIsNot2XX() {
     MockResponse mockFailedResponse = new MockResponse();
@@ -173,8 +286,246 @@ public class GcrClientTest {
   }
 
 
+  @Test
+  public void getImageTagsShouldSendConditionalRequestWithPreviousValidator()
+      throws IOException, InterruptedException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setBody(imageTagResp)
+            .setHeader("ETag", "\"v1\"")
+            .setHeader("Last-Modified", "Tue, 01 Jan 2019 00:00:00 GMT"));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+
+    String token = "my_token";
+    String project = "gcp-project";
+    String imageName = "myImage";
+    RegistryResponse<ImageTags> first =
+        gcrClient.getImageTags(url, project, imageName, token, null);
+    RegistryResponse<ImageTags> second =
+        gcrClient.getImageTags(url, project, imageName, token, first.getValidator());
+
+    assertThat(
+        first.getValidator(),
+        equalTo(new CacheValidator("\"v1\"", "Tue, 01 Jan 2019 00:00:00 GMT")));
+    assertThat(second.isNotModified(), equalTo(true));
+    assertThat(second.getBody(), equalTo(null));
+
+    assertThat(mockWebServer.takeRequest().getHeader("If-None-Match"), equalTo(null));
+    RecordedRequest conditionalRequest = mockWebServer.takeRequest();
+    assertThat(conditionalRequest.getHeader("If-None-Match"), equalTo("\"v1\""));
+    assertThat(
+        conditionalRequest.getHeader("If-Modified-Since"),
+        equalTo("Tue, 01 Jan 2019 00:00:00 GMT"));
+  }
+
+  @Test
+  public void getLatestImageTagShouldSelectLatestImageWhileStreaming() throws IOException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    mockWebServer.enqueue(new MockResponse().setBody(imageTagResp));
+    mockWebServer.enqueue(new MockResponse().setBody(imageTagResp));
+    mockWebServer.enqueue(new MockResponse().setBody(imageTagResp));
+
+    String token = "my_token";
+    String project = "gcp-project";
+    String imageName = "myImage";
+
+    assertThat(
+        gcrClient.getLatestImageTag(url, project, imageName, token, TagFilter.compile(".*")),
+        equalTo(new ImageTag("2.1.0", 4)));
+    assertThat(
+        gcrClient.getLatestImageTag(url, project, imageName, token, TagFilter.compile("^1.*")),
+        equalTo(new ImageTag("1.1.1", 3)));
+    assertThat(
+        gcrClient.getLatestImageTag(url, project, imageName, token, TagFilter.compile("^3.*")),
+        equalTo(new ImageTag(ImageTag.NO_IMAGE_FOUND, 0)));
+  }
+
+  @Test(expected = PollerException.class)
+  public void getLatestImageTagShouldThrowPollerExceptionIfResponseIsNot2XX() {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+
+    gcrClient.getLatestImageTag(
+        url, "gcp-project", "myImage", "my_token", TagFilter.compile(".*"));
+  }
+
+  @Test
+  public void getImageTagsPageShouldFollowNextLink() throws IOException, InterruptedException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    String nextLink = "/v2/gcp-project/myImage/tags/list?n=2&last=1.1.1";
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setBody(imageTagResp)
+            .setHeader("Link", String.format("<%s>; rel=\"next\"", nextLink)));
+    mockWebServer.enqueue(new MockResponse().setBody(imageTagResp));
+
+    String token = "my_token";
+    String project = "gcp-project";
+    String imageName = "myImage";
+    RegistryResponse<ImageTags> first =
+        gcrClient.getImageTagsPage(url, project, imageName, token, 2, null);
+    RegistryResponse<ImageTags> second =
+        gcrClient.getImageTagsPage(url, project, imageName, token, 2, first.getNextLink());
+
+    assertThat(first.getNextLink(), equalTo(nextLink));
+    assertThat(second.getNextLink(), equalTo(null));
+    assertThat(
+        mockWebServer.takeRequest().getPath(),
+        equalTo("/v2/gcp-project/myImage/tags/list?n=2"));
+    assertThat(mockWebServer.takeRequest().getPath(), equalTo(nextLink));
+  }
+
+  @Test
+  public void getImageTagsPageShouldNotSendTokenToOtherHostOfNextLink() throws Exception {
+    MockWebServer otherHost = new MockWebServer();
+    otherHost.start();
+    String nextLink =
+        String.format(
+            "http://%s:%d/v2/gcp-project/myImage/tags/list?n=2&last=1.1.1",
+            otherHost.getHostName(),
+            otherHost.getPort());
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setBody("{}")
+            .setHeader("Link", String.format("<%s>; rel=\"next\"", nextLink)));
+
+    try {
+      RegistryResponse<ImageTags> first =
+          gcrClient.getImageTagsPage(url, "gcp-project", "myImage", "my_token", 2, null);
+      gcrClient.getImageTagsPage(
+          url, "gcp-project", "myImage", "my_token", 2, first.getNextLink());
+      throw new AssertionError("next link to another host should be rejected");
+    } catch (PollerException e) {
+      assertThat(otherHost.getRequestCount(), equalTo(0));
+    } finally {
+      otherHost.shutdown();
+    }
+  }
+
+  @Test
+  public void resolveShouldKeepNextLinkOnRegistry() {
+    assertThat(
+        GcrClient.resolve("gcr.io", "https://GCR.io/v2/p/i/tags/list?n=2&last=a%2Fb"),
+        equalTo("http://gcr.io/v2/p/i/tags/list?n=2&last=a%2Fb"));
+    assertThat(
+        GcrClient.resolve("gcr.io", "v2/p/i/tags/list?n=2"),
+        equalTo("http://gcr.io/v2/p/i/tags/list?n=2"));
+  }
+
+  @Test
+  public void shouldReuseConnectionsBetweenRequests() throws InterruptedException {
+    Token gcrToken = new Token("1234", "1234", "secret_token");
+    mockWebServer.enqueue(new MockResponse().setBody(JsonUtil.toJsonString(gcrToken)));
+    mockWebServer.enqueue(new MockResponse().setBody(JsonUtil.toJsonString(gcrToken)));
+
+    gcrClient.getImageAccessToken(url, "gcp-project", "myImage", "my_token");
+    gcrClient.getImageAccessToken(url, "gcp-project", "myImage", "my_token");
+
+    assertThat(mockWebServer.takeRequest().getSequenceNumber(), equalTo(0));
+    assertThat(mockWebServer.takeRequest().getSequenceNumber(), equalTo(1));
+  }
+
+  @Test
+  public void getImageAccessTokenAsyncShouldSendValidRequest() throws Exception {
+    Token token = new Token("1234", "1234", "secret_token");
+    mockWebServer.enqueue(new MockResponse().setBody(JsonUtil.toJsonString(token)));
+
+    Token tkn =
+        gcrClient
+            .getImageAccessTokenAsync(url, "gcp-project", "myImage", "gcr_token")
+            .get(5, TimeUnit.SECONDS);
+
+    assertThat(tkn, equalTo(token));
+    RecordedRequest recRequest = mockWebServer.takeRequest();
+    assertThat(recRequest.getHeader("Authorization"), equalTo("Bearer gcr_token"));
+    assertThat(
+        recRequest.getPath(),
+        equalTo(
+            String.format(
+                "/v2/token?service=%s&scope=repository:gcp-project/myImage:pull",
+                URLParamEncoder.encode(url))));
+  }
+
+  @Test
+  public void getImageTagsAsyncShouldRetryTransientFailures() throws Exception {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+    mockWebServer.enqueue(new MockResponse().setBody(imageTagResp));
+
+    ImageTags imageTags =
+        gcrClient
+            .getImageTagsAsync(url, "gcp-project", "myImage", "my_token")
+            .get(5, TimeUnit.SECONDS);
+
+    assertThat(imageTags, equalTo(JsonUtil.fromJsonString(imageTagResp, ImageTags.class)));
+    assertThat(mockWebServer.getRequestCount(), equalTo(2));
+  }
+
+  @Test
+  public void getImageTagsAsyncShouldReadResponsesOffIoDispatchThreads() throws Exception {
+    mockWebServer.enqueue(
+        new MockResponse().setBody("{}").setBodyDelay(200, TimeUnit.MILLISECONDS));
+
+    String thread =
+        gcrClient
+            .getImageTagsAsync(url, "gcp-project", "myImage", "my_token")
+            .thenApply(imageTags -> Thread.currentThread().getName())
+            .get(5, TimeUnit.SECONDS);
+
+    assertTrue(thread, thread.startsWith("gcr-poller-async-response"));
+  }
+
+  @Test
+  public void getImageTagsAsyncShouldNotOpenCircuitBreakerWhileRegistryIsPaused()
+      throws Exception {
+    gcrClient.close();
+    gcrClient =
+        new GcrClient(
+            new RegistryTransport(),
+            new RegistryRateLimiter(0, 1, 5000),
+            new RetryPolicy(1, 10, 10, 5000),
+            new RegistryCircuitBreaker(50, 10, 1, 60000, 500));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+    mockWebServer.enqueue(new MockResponse().setBody("{}"));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "60"));
+
+    for (int i = 0; i < 4; i++) {
+      try {
+        gcrClient
+            .getImageTagsAsync(url, "gcp-project", "myImage", "my_token")
+            .get(5, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+        // paused, or rejected by the rate limiter
+      }
+    }
+
+    assertThat(mockWebServer.getRequestCount(), equalTo(3));
+    assertThat(
+        gcrClient.getCircuitBreaker().getState(url),
+        equalTo(RegistryCircuitBreaker.State.CLOSED));
+  }
+
+  @Test(expected = PollerException.class)
+  public void getImageTagsAsyncShouldFailWithPollerExceptionIfResponseIsNot2XX()
+      throws Throwable {
+    mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+
+    try {
+      gcrClient
+          .getImageTagsAsync(url, "gcp-project", "myImage", "my_token")
+          .get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      throw e.getCause();
+    }
+  }
+
   @After
   public void tearDown() throws Exception {
+    gcrClient.close();
     mockWebServer.shutdown();
   }
 }
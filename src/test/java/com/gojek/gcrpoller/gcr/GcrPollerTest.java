@@ -22,23 +22,38 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.gojek.gcrpoller.JsonUtil;
 import com.gojek.gcrpoller.PluginConfigurations;
+import com.gojek.gcrpoller.exception.CircuitOpenException;
 import com.gojek.gcrpoller.exception.InvalidCredentialException;
 import com.gojek.gcrpoller.message.CheckConnectionResultMessage;
 import com.gojek.gcrpoller.message.PackageMaterialProperties;
 import com.gojek.gcrpoller.message.PackageMaterialProperty;
 import com.gojek.gcrpoller.message.PackageRevisionMessage;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import java.io.IOException;
 import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -102,8 +117,9 @@ public class GcrPollerTest {
 
     when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
         .thenReturn(token);
-    when(gcrClient.getImageTags(anyString(), anyString(), anyString(), anyString()))
-        .thenReturn(imageTags);
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null));
 
     String gcrToken = "gcr_token";
     PackageMaterialProperties packageConfig = new PackageMaterialProperties();
@@ -128,6 +144,44 @@ public class GcrPollerTest {
     assertThat(result.getTimestamp(), equalTo(date));
   }
 
+  @Test
+  public void refreshLatestImageAsyncShouldShareOneFetchBetweenConcurrentPolls()
+      throws Exception {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    ImageTags imageTags = JsonUtil.fromJsonString(imageTagResp, ImageTags.class);
+    CompletableFuture<RegistryResponse<ImageTags>> tagsResponse = new CompletableFuture<>();
+
+    when(gcrClient.getImageAccessTokenAsync(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(CompletableFuture.completedFuture(new Token("1", "2", "my_token")));
+    when(gcrClient.getImageTagsAsync(
+            anyString(), anyString(), anyString(), eq("my_token"), any(CacheValidator.class)))
+        .thenReturn(tagsResponse);
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    CompletableFuture<Void> first =
+        gcrPoller.refreshLatestImageAsync(packageConfig, repoConfig, "gcr_token");
+    CompletableFuture<Void> second =
+        gcrPoller.refreshLatestImageAsync(packageConfig, repoConfig, "gcr_token");
+    assertFalse(first.isDone());
+
+    tagsResponse.complete(new RegistryResponse<>(200, imageTags, null));
+
+    first.get();
+    second.get();
+    verify(gcrClient, times(1))
+        .getImageTagsAsync(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class));
+  }
+
   @Test
   public void getLatestRevisionWithTagFilter() throws IOException {
     URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
@@ -138,8 +192,9 @@ public class GcrPollerTest {
 
     when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
         .thenReturn(token);
-    when(gcrClient.getImageTags(anyString(), anyString(), anyString(), anyString()))
-        .thenReturn(imageTags);
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null));
 
     String gcrToken = "gcr_token";
     PackageMaterialProperties packageConfig = new PackageMaterialProperties();
@@ -177,8 +232,9 @@ public class GcrPollerTest {
 
     when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
         .thenReturn(token);
-    when(gcrClient.getImageTags(anyString(), anyString(), anyString(), anyString()))
-        .thenReturn(imageTags);
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null));
 
     String gcrToken = "gcr_token";
     PackageMaterialProperties packageConfig = new PackageMaterialProperties();
@@ -217,8 +273,9 @@ public class GcrPollerTest {
 
     when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
         .thenReturn(token);
-    when(gcrClient.getImageTags(anyString(), anyString(), anyString(), anyString()))
-        .thenReturn(imageTags);
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null));
 
     String gcrToken = "gcr_token";
     PackageMaterialProperties packageConfig = new PackageMaterialProperties();
@@ -242,4 +299,417 @@ public class GcrPollerTest {
     assertNull(result.getRevision());
     assertNull(result.getTimestamp());
   }
+
+  @Test
+  public void getLatestRevisionSinceShouldSkipChecksOfUnchangedImageUntilBackoffExpires()
+      throws IOException {
+    gcrPoller =
+        new GcrPoller(
+            gcrClient, new RegistryTokenCache(), new PollerSettings().withMaxBackoffMs(600000));
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    ImageTags imageTags = JsonUtil.fromJsonString(imageTagResp, ImageTags.class);
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    Date latestImageDate = new Date();
+    latestImageDate.setTime(4);
+    PackageRevisionMessage latest =
+        new PackageRevisionMessage("2.1.0", latestImageDate, "", "", "");
+    gcrPoller.getLatestRevisionSince(packageConfig, repoConfig, latest, "gcr_token");
+    PackageRevisionMessage result =
+        gcrPoller.getLatestRevisionSince(packageConfig, repoConfig, latest, "gcr_token");
+
+    assertNull(result.getRevision());
+    verify(gcrClient, times(1))
+        .getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class));
+
+    Date olderImageDate = new Date();
+    olderImageDate.setTime(3);
+    PackageRevisionMessage older =
+        new PackageRevisionMessage("1.1.1", olderImageDate, "", "", "");
+    result = gcrPoller.getLatestRevisionSince(packageConfig, repoConfig, older, "gcr_token");
+
+    assertThat(result.getRevision(), equalTo("2.1.0"));
+  }
+
+  @Test
+  public void getLatestRevisionShouldReuseCachedRegistryToken() throws IOException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    ImageTags imageTags = JsonUtil.fromJsonString(imageTagResp, ImageTags.class);
+    Token token = new Token("3600", Instant.now().toString(), "my_token");
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(token);
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null));
+
+    String gcrToken = "gcr_token";
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+
+    String project = "my-gcp-project";
+    String registryUrl = "gcr.io";
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue(project));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL,
+        new PackageMaterialProperty().withValue(registryUrl));
+
+    gcrPoller.getLatestRevision(packageConfig, repoConfig, gcrToken);
+    PackageRevisionMessage result =
+        gcrPoller.getLatestRevision(packageConfig, repoConfig, gcrToken);
+
+    assertThat(result.getRevision(), equalTo("2.1.0"));
+    verify(gcrClient, times(1)).getImageAccessToken(registryUrl, project, "myimage", gcrToken);
+    verify(gcrClient, times(2))
+        .getImageTags(
+            eq(registryUrl),
+            eq(project),
+            eq("myimage"),
+            eq("my_token"),
+            any(CacheValidator.class));
+  }
+
+  @Test
+  public void registryTokenRenewalShouldUseCurrentAccessTokenOfServiceAccount()
+      throws IOException {
+    RegistryTokenCache tokenCache = new RegistryTokenCache();
+    GoogleCredentialService credentialService = mock(GoogleCredentialService.class);
+    Date expiry = new Date(System.currentTimeMillis() + 3600000);
+    when(credentialService.getGcrCredential("service-account"))
+        .thenReturn(GoogleCredentials.create(new AccessToken("current", expiry)))
+        .thenReturn(GoogleCredentials.create(new AccessToken("renewed", expiry)));
+    gcrPoller =
+        new GcrPoller(gcrClient, tokenCache, new PollerSettings(), credentialService);
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    Token expiring = new Token("3600", Instant.now().minusSeconds(2400).toString(), "my_token");
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(expiring);
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(
+            new RegistryResponse<>(
+                200, JsonUtil.fromJsonString(imageTagResp, ImageTags.class), null));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_SERVICE_ACCOUNT,
+        new PackageMaterialProperty().withValue("service-account"));
+
+    gcrPoller.getLatestRevision(packageConfig, repoConfig, "expired");
+    tokenCache.refreshExpiring(TimeUnit.HOURS.toMillis(1), 0);
+
+    verify(gcrClient).getImageAccessToken("gcr.io", "project", "myimage", "current");
+    verify(gcrClient).getImageAccessToken("gcr.io", "project", "myimage", "renewed");
+    verify(gcrClient, never()).getImageAccessToken("gcr.io", "project", "myimage", "expired");
+  }
+
+  @Test
+  public void getLatestRevisionSinceShouldReusePreviousResultWhenImageListNotModified()
+      throws IOException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    ImageTags imageTags = JsonUtil.fromJsonString(imageTagResp, ImageTags.class);
+    CacheValidator validator = new CacheValidator("\"v1\"", null);
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, validator))
+        .thenReturn(new RegistryResponse<ImageTags>(304, null, validator));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    Date previousImageDate = new Date();
+    previousImageDate.setTime(2);
+    PackageRevisionMessage previous =
+        new PackageRevisionMessage("1.1.0", previousImageDate, "", "", "");
+    gcrPoller.getLatestRevisionSince(packageConfig, repoConfig, previous, "gcr_token");
+    PackageRevisionMessage result =
+        gcrPoller.getLatestRevisionSince(packageConfig, repoConfig, previous, "gcr_token");
+
+    assertThat(result.getRevision(), equalTo("2.1.0"));
+    verify(gcrClient).getImageTags("gcr.io", "my-project", "myimage", "my_token", null);
+    verify(gcrClient).getImageTags("gcr.io", "my-project", "myimage", "my_token", validator);
+  }
+
+  @Test
+  public void getLatestRevisionShouldShareImageListSnapshotBetweenTagFilters() throws IOException {
+    gcrPoller =
+        new GcrPoller(
+            gcrClient, new RegistryTokenCache(), new PollerSettings().withSnapshotTtlMs(60000));
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    ImageTags imageTags = JsonUtil.fromJsonString(imageTagResp, ImageTags.class);
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null));
+
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+    PackageMaterialProperties allTags = new PackageMaterialProperties();
+    allTags.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties releaseTags = new PackageMaterialProperties();
+    releaseTags.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    releaseTags.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_TAG_FILTER, new PackageMaterialProperty().withValue("^1.*"));
+
+    PackageRevisionMessage latest = gcrPoller.getLatestRevision(allTags, repoConfig, "gcr_token");
+    PackageRevisionMessage latestRelease =
+        gcrPoller.getLatestRevision(releaseTags, repoConfig, "gcr_token");
+
+    assertThat(latest.getRevision(), equalTo("2.1.0"));
+    assertThat(latestRelease.getRevision(), equalTo("1.1.1"));
+    verify(gcrClient, times(1))
+        .getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class));
+  }
+
+  @Test
+  public void getLatestRevisionShouldServeKnownResultAndRefreshInBackground() throws IOException {
+    List<Runnable> refreshes = new ArrayList<>();
+    gcrPoller =
+        new GcrPoller(
+            gcrClient,
+            new RegistryTokenCache(),
+            new PollerSettings().withMaxStalenessMs(60000),
+            refreshes::add);
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    ImageTags imageTags = JsonUtil.fromJsonString(imageTagResp, ImageTags.class);
+    ImageTags newerImageTags =
+        JsonUtil.fromJsonString(
+            "{\"manifest\":{\"sha256:5\":{\"tag\":[\"3.0.0\"],\"timeUploadedMs\":\"5\"}}}",
+            ImageTags.class);
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null))
+        .thenReturn(new RegistryResponse<>(200, newerImageTags, null));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    PackageRevisionMessage cold = gcrPoller.getLatestRevision(packageConfig, repoConfig, "token");
+    PackageRevisionMessage known = gcrPoller.getLatestRevision(packageConfig, repoConfig, "token");
+    gcrPoller.getLatestRevision(packageConfig, repoConfig, "token");
+
+    assertThat(cold.getRevision(), equalTo("2.1.0"));
+    assertThat(known.getRevision(), equalTo("2.1.0"));
+    assertThat(refreshes.size(), equalTo(1));
+    verify(gcrClient, times(1))
+        .getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class));
+
+    refreshes.get(0).run();
+    PackageRevisionMessage refreshed =
+        gcrPoller.getLatestRevision(packageConfig, repoConfig, "token");
+
+    assertThat(refreshed.getRevision(), equalTo("3.0.0"));
+  }
+
+  @Test
+  public void getLatestRevisionShouldAnswerFromPolledResultsWhenPollingIsEnabled()
+      throws IOException {
+    List<Runnable> refreshes = new ArrayList<>();
+    gcrPoller =
+        new GcrPoller(
+            gcrClient,
+            new RegistryTokenCache(),
+            new PollerSettings().withPollIntervalMs(60000),
+            refreshes::add);
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(
+            new RegistryResponse<>(
+                200, JsonUtil.fromJsonString(imageTagResp, ImageTags.class), null));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    gcrPoller.refreshLatestImage(packageConfig, repoConfig, "token");
+    PackageRevisionMessage polled =
+        gcrPoller.getLatestRevision(packageConfig, repoConfig, "token");
+
+    assertThat(polled.getRevision(), equalTo("2.1.0"));
+    assertThat(refreshes.size(), equalTo(0));
+    verify(gcrClient, times(1))
+        .getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class));
+  }
+
+  @Test
+  public void getLatestRevisionShouldAnswerLastKnownImageWhileCircuitIsOpen() throws IOException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+    ImageTags imageTags = JsonUtil.fromJsonString(imageTagResp, ImageTags.class);
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class)))
+        .thenReturn(new RegistryResponse<>(200, imageTags, null))
+        .thenThrow(new CircuitOpenException("open"));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties otherPackageConfig = new PackageMaterialProperties();
+    otherPackageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("other"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    gcrPoller.getLatestRevision(packageConfig, repoConfig, "gcr_token");
+    PackageRevisionMessage result =
+        gcrPoller.getLatestRevision(packageConfig, repoConfig, "gcr_token");
+    PackageRevisionMessage unknown =
+        gcrPoller.getLatestRevision(otherPackageConfig, repoConfig, "gcr_token");
+
+    assertThat(result.getRevision(), equalTo("2.1.0"));
+    assertNull(unknown.getRevision());
+  }
+
+  @Test
+  public void getLatestRevisionShouldStreamImageListWhenEnabled() {
+    gcrPoller =
+        new GcrPoller(
+            gcrClient,
+            new RegistryTokenCache(),
+            new PollerSettings().withStreamingTagsList(true));
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getLatestImageTag(
+            anyString(), anyString(), anyString(), anyString(), any(TagFilter.class)))
+        .thenReturn(new ImageTag("1.1.1", 3));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    PackageRevisionMessage result =
+        gcrPoller.getLatestRevision(packageConfig, repoConfig, "gcr_token");
+
+    Date date = new Date();
+    date.setTime(3);
+    assertThat(result.getRevision(), equalTo("1.1.1"));
+    assertThat(result.getTimestamp(), equalTo(date));
+    verify(gcrClient, never())
+        .getImageTags(
+            anyString(), anyString(), anyString(), anyString(), any(CacheValidator.class));
+  }
+
+  @Test
+  public void getLatestRevisionShouldSelectLatestImageAcrossPages() {
+    gcrPoller =
+        new GcrPoller(
+            gcrClient, new RegistryTokenCache(), new PollerSettings().withTagsListPageSize(1));
+    Map<String, ImageManifest> firstPage = new HashMap<>();
+    firstPage.put(
+        "sha256:a",
+        new ImageManifest("1", "", "", Collections.singletonList("1.1.0"), "5", "5"));
+    Map<String, ImageManifest> secondPage = new HashMap<>();
+    secondPage.put(
+        "sha256:b",
+        new ImageManifest("1", "", "", Collections.singletonList("1.2.0"), "3", "3"));
+    String nextLink = "/v2/my-project/myimage/tags/list?n=1&last=1.1.0";
+
+    when(gcrClient.getImageAccessToken(anyString(), anyString(), anyString(), anyString()))
+        .thenReturn(new Token("1", "2", "my_token"));
+    when(gcrClient.getImageTagsPage("gcr.io", "my-project", "myimage", "my_token", 1, null))
+        .thenReturn(
+            new RegistryResponse<>(
+                200, new ImageTags(null, firstPage, "myimage", null), null, nextLink));
+    when(gcrClient.getImageTagsPage("gcr.io", "my-project", "myimage", "my_token", 1, nextLink))
+        .thenReturn(
+            new RegistryResponse<>(200, new ImageTags(null, secondPage, "myimage", null), null));
+
+    PackageMaterialProperties packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    PackageMaterialProperties repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+
+    PackageRevisionMessage result =
+        gcrPoller.getLatestRevision(packageConfig, repoConfig, "gcr_token");
+
+    assertThat(result.getRevision(), equalTo("1.1.0"));
+    verify(gcrClient, times(2))
+        .getImageTagsPage(
+            anyString(), anyString(), anyString(), anyString(), eq(1), anyString());
+  }
 }
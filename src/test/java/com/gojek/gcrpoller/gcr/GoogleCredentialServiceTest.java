@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.gojek.gcrpoller.util.LruCache;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GoogleCredentialServiceTest {
+
+  private LruCache<String, GoogleCredentialService.CachedCredential> cache;
+  private int loadCount;
+  private GoogleCredentialService service;
+
+  @Before
+  public void setUp() {
+    cache = new LruCache<>(1);
+    loadCount = 0;
+    service = newService(GoogleCredentialService.DEFAULT_IDLE_MS);
+  }
+
+  private GoogleCredentialService newService(long idleMs) {
+    return new GoogleCredentialService(cache, idleMs) {
+      @Override
+      GoogleCredentials loadCredential(String jsonServiceAccount) {
+        loadCount++;
+        Date expiry = new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        return GoogleCredentials.create(new AccessToken(jsonServiceAccount, expiry));
+      }
+    };
+  }
+
+  @Test
+  public void shouldReuseCredentialForSameServiceAccount() {
+    GoogleCredentials first = service.getGcrCredential("{\"key\":\"a\"}");
+    GoogleCredentials second = service.getGcrCredential("{\"key\":\"a\"}");
+
+    assertThat(second, sameInstance(first));
+    assertThat(loadCount, equalTo(1));
+    assertThat(cache.hitCount(), equalTo(1L));
+    assertThat(cache.missCount(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldLoadCredentialAgainAfterEviction() {
+    service.getGcrCredential("{\"key\":\"a\"}");
+    service.getGcrCredential("{\"key\":\"b\"}");
+    service.getGcrCredential("{\"key\":\"a\"}");
+
+    assertThat(loadCount, equalTo(3));
+    assertThat(cache.evictionCount(), equalTo(2L));
+  }
+
+  @Test
+  public void shouldTreatTokenCloseToExpiryAsNearExpiry() {
+    Date soon = new Date(System.currentTimeMillis() + 1000);
+    GoogleCredentials credentials = GoogleCredentials.create(new AccessToken("t", soon));
+
+    assertThat(
+        GoogleCredentialService.isNearExpiry(
+            credentials, GoogleCredentialService.REFRESH_MARGIN_MS),
+        equalTo(true));
+  }
+
+  @Test
+  public void shouldDropCredentialsWhichAreNotRead() throws InterruptedException {
+    service = newService(0);
+    service.getGcrCredential("{\"key\":\"a\"}");
+    Thread.sleep(5);
+
+    service.refreshExpiring(TimeUnit.HOURS.toMillis(2), 0);
+
+    assertThat(cache.size(), equalTo(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptyServiceAccount() {
+    service.getGcrCredential("");
+  }
+}
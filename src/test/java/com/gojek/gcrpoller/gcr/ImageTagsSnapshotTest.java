@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ImageTagsSnapshotTest {
+
+  private final ImageTags imageTags = new ImageTags();
+  private final List<List<String>> passes = new ArrayList<>();
+
+  @Test
+  public void shouldSelectRequestedFiltersOfPreviousSnapshotInOnePass() {
+    TagFilter release = TagFilter.compile("^release-");
+    TagFilter prod = TagFilter.compile("-prod$");
+    TagFilter all = TagFilter.compile(".*");
+
+    ImageTagsSnapshot previous = new ImageTagsSnapshot(imageTags, null);
+    previous.latestImage(release, this::select);
+    previous.latestImage(prod, this::select);
+    previous.latestImage(release, this::select);
+    assertThat(
+        passes,
+        equalTo(
+            Arrays.asList(
+                Collections.singletonList("^release-"), Collections.singletonList("-prod$"))));
+
+    passes.clear();
+    ImageTagsSnapshot snapshot =
+        new ImageTagsSnapshot(imageTags, null, previous.getRequestedFilters());
+    assertThat(snapshot.latestImage(prod, this::select), equalTo(new ImageTag("-prod$", 1)));
+    assertThat(
+        snapshot.latestImage(release, this::select), equalTo(new ImageTag("^release-", 1)));
+    snapshot.latestImage(all, this::select);
+    assertThat(passes.size(), equalTo(2));
+    assertThat(passes.get(0).size(), equalTo(2));
+    assertThat(passes.get(0).get(0), equalTo("-prod$"));
+    assertThat(passes.get(1), equalTo(Collections.singletonList(".*")));
+  }
+
+  private List<ImageTag> select(ImageTags selected, List<TagFilter> tagFilters) {
+    List<String> filters = new ArrayList<>();
+    List<ImageTag> latestImages = new ArrayList<>();
+    for (TagFilter tagFilter : tagFilters) {
+      filters.add(tagFilter.getFilter());
+      latestImages.add(new ImageTag(tagFilter.getFilter(), 1));
+    }
+    passes.add(filters);
+    return latestImages;
+  }
+}
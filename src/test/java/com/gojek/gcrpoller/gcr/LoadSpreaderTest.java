@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.gojek.gcrpoller.exception.PollerException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LoadSpreaderTest {
+
+  @Test
+  public void shouldRunRequestsWithoutLimitByDefault() {
+    LoadSpreader spreader = LoadSpreader.from(new PollerSettings());
+
+    spreader.delay(new MaterialKey(new ImageKey("gcr.io", "project", "image"), ".*"));
+
+    assertThat(spreader.call(() -> "done"), equalTo("done"));
+  }
+
+  @Test(expected = PollerException.class)
+  public void shouldFailRequestWhenNoSlotFreesUpInTime() throws InterruptedException {
+    LoadSpreader spreader = new LoadSpreader(0, 1, 10);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread holder =
+        new Thread(
+            () ->
+                spreader.call(
+                    () -> {
+                      running.countDown();
+                      try {
+                        return release.await(5, TimeUnit.SECONDS);
+                      } catch (InterruptedException e) {
+                        return false;
+                      }
+                    }));
+    holder.start();
+    running.await();
+
+    try {
+      spreader.call(() -> "blocked");
+    } finally {
+      release.countDown();
+      holder.join();
+      assertThat(spreader.availableSlots(), equalTo(1));
+    }
+  }
+}
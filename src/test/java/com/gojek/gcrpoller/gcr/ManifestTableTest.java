@@ -0,0 +1,167 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ManifestTableTest {
+
+  private final Gson gson = new Gson();
+
+  @Test
+  public void shouldReadManifestsIntoTableWithSameContent() throws IOException {
+    URL resourceUrl = Resources.getResource("responses/get_image_tags_resp.json");
+    String imageTagResp = Resources.toString(resourceUrl, Charsets.UTF_8);
+
+    ImageTags imageTags = gson.fromJson(imageTagResp, ImageTags.class);
+
+    assertThat(imageTags.getManifest(), instanceOf(ManifestTable.class));
+    assertThat(imageTags.getManifest().size(), equalTo(4));
+    assertThat(
+        imageTags
+            .getManifest()
+            .get("sha256:b031588e93214cbb3212d32c381b18b4f8e51e2e1a99f5b95015d6819c236cf8"),
+        equalTo(
+            new ImageManifest(
+                "310556932",
+                "",
+                "application/vnd.docker.distribution.manifest.v2+json",
+                Collections.singletonList("1.1.1"),
+                "3",
+                "3")));
+    JsonParser parser = new JsonParser();
+    assertThat(parser.parse(gson.toJson(imageTags)), equalTo(parser.parse(imageTagResp)));
+  }
+
+  @Test
+  public void shouldSelectLatestManifestWithMatchingTag() {
+    JsonObject manifests = new JsonObject();
+    manifests.add("a", manifest("10", "1.0.0", "latest"));
+    manifests.add("b", manifest("30", "feature-x"));
+    manifests.add("c", manifest("20", "1.1.0"));
+    manifests.add("d", manifest(null, "2.0.0"));
+    JsonObject json = new JsonObject();
+    json.add("manifest", manifests);
+
+    ManifestTable table = (ManifestTable) gson.fromJson(json, ImageTags.class).getManifest();
+
+    assertThat(table.latestImage(TagFilter.compile("^\\d")), equalTo(new ImageTag("1.1.0", 20)));
+    assertThat(table.latestImage(TagFilter.compile("latest")), equalTo(new ImageTag("latest", 10)));
+    assertThat(
+        table.latestImage(TagFilter.compile("nothing")),
+        equalTo(new ImageTag(ImageTag.NO_IMAGE_FOUND, 0)));
+    assertThat(table.get("d").getTimeUploadedMs(), equalTo(null));
+  }
+
+  @Test
+  public void shouldSelectLatestImagesOfAllFiltersInOnePass() {
+    JsonObject manifests = new JsonObject();
+    manifests.add("a", manifest("10", "1.0.0", "latest"));
+    manifests.add("b", manifest("30", "feature-x"));
+    manifests.add("c", manifest("20", "1.1.0"));
+    manifests.add("d", manifest("5", "0.9.0"));
+    JsonObject json = new JsonObject();
+    json.add("manifest", manifests);
+    ManifestTable table = (ManifestTable) gson.fromJson(json, ImageTags.class).getManifest();
+
+    List<TagFilter> tagFilters =
+        Arrays.asList(
+            TagFilter.compile("^\\d"),
+            TagFilter.compile("latest"),
+            TagFilter.compile(".*"),
+            TagFilter.compile("nothing"),
+            TagFilter.compile("^0\\."));
+
+    List<ImageTag> expected = new ArrayList<>();
+    for (TagFilter tagFilter : tagFilters) {
+      expected.add(table.latestImage(tagFilter));
+    }
+    assertThat(table.latestImages(tagFilters), equalTo(expected));
+    assertThat(
+        expected,
+        equalTo(
+            Arrays.asList(
+                new ImageTag("1.1.0", 20),
+                new ImageTag("latest", 10),
+                new ImageTag("feature-x", 30),
+                new ImageTag(ImageTag.NO_IMAGE_FOUND, 0),
+                new ImageTag("0.9.0", 5))));
+  }
+
+  @Test
+  public void selectionShouldNotAllocatePerManifest() {
+    Assume.assumeTrue(
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads.isThreadAllocatedMemoryEnabled());
+    int manifestCount = 100_000;
+    JsonObject manifests = new JsonObject();
+    for (int i = 1; i <= manifestCount; i++) {
+      manifests.add("sha256:" + i, manifest(Integer.toString(i), "build-" + i, "1.0." + i));
+    }
+    JsonObject json = new JsonObject();
+    json.add("manifest", manifests);
+    ManifestTable table = (ManifestTable) gson.fromJson(json, ImageTags.class).getManifest();
+    Predicate<String> matcher = TagFilter.compile("^\\d").matcher();
+    for (int i = 0; i < 20; i++) {
+      table.latestImage(matcher);
+    }
+
+    int rounds = 10;
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+    ImageTag latestImage = null;
+    for (int i = 0; i < rounds; i++) {
+      latestImage = table.latestImage(matcher);
+    }
+    long bytesPerSelection = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / rounds;
+
+    assertThat(latestImage, equalTo(new ImageTag("1.0." + manifestCount, manifestCount)));
+    assertTrue(
+        "selection allocated " + bytesPerSelection + " bytes", bytesPerSelection < 1024);
+  }
+
+  private JsonObject manifest(String timeUploadedMs, String... tags) {
+    return gson.toJsonTree(
+            new ImageManifest("1", "", "", Arrays.asList(tags), timeUploadedMs, timeUploadedMs))
+        .getAsJsonObject();
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PollBackoffTest {
+
+  private final ImageTag image = new ImageTag("1.0.0", 1);
+
+  @Test
+  public void shouldDoubleIntervalUpToMaxWhileUnchanged() {
+    PollBackoff backoff = new PollBackoff(100, 300);
+
+    backoff.unchanged(image, 0);
+    assertThat(backoff.getIntervalMs(), equalTo(100L));
+    backoff.unchanged(image, 100);
+    assertThat(backoff.getIntervalMs(), equalTo(200L));
+    backoff.unchanged(image, 300);
+    assertThat(backoff.getIntervalMs(), equalTo(300L));
+
+    assertFalse(backoff.isDue(image, 599));
+    assertTrue(backoff.isDue(image, 600));
+  }
+
+  @Test
+  public void shouldResetIntervalWhenChanged() {
+    PollBackoff backoff = new PollBackoff(100, 300);
+    backoff.unchanged(image, 0);
+    backoff.unchanged(image, 100);
+
+    backoff.changed();
+
+    assertThat(backoff.getIntervalMs(), equalTo(0L));
+    assertTrue(backoff.isDue(image, 101));
+    assertThat(backoff.getChecks(), equalTo(3L));
+    assertThat(backoff.getChanges(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldBeDueWhenPreviousRevisionIsNotTheUnchangedOne() {
+    PollBackoff backoff = new PollBackoff(100, 300);
+    backoff.unchanged(image, 0);
+
+    assertTrue(backoff.isDue(new ImageTag("0.9.0", 0), 1));
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.gojek.gcrpoller.PluginConfigurations;
+import com.gojek.gcrpoller.message.PackageMaterialProperties;
+import com.gojek.gcrpoller.message.PackageMaterialProperty;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PollSchedulerTest {
+
+  private GcrPoller poller;
+  private GoogleCredentialService credentialService;
+  private PackageMaterialProperties packageConfig;
+  private PackageMaterialProperties repoConfig;
+  private PollScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    poller = mock(GcrPoller.class);
+    credentialService = mock(GoogleCredentialService.class);
+    when(credentialService.getGcrCredential(anyString()))
+        .thenReturn(GoogleCredentials.create(new AccessToken("gcr_token", new Date())));
+    when(poller.refreshLatestImageAsync(
+            any(PackageMaterialProperties.class),
+            any(PackageMaterialProperties.class),
+            anyString()))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    packageConfig = new PackageMaterialProperties();
+    packageConfig.addPackageMaterialProperty(
+        PluginConfigurations.DOCKER_IMAGE, new PackageMaterialProperty().withValue("myimage"));
+    repoConfig = new PackageMaterialProperties();
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_PROJECT, new PackageMaterialProperty().withValue("my-project"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_REGISTRY_URL, new PackageMaterialProperty().withValue("gcr.io"));
+    repoConfig.addPackageMaterialProperty(
+        PluginConfigurations.GCP_SERVICE_ACCOUNT, new PackageMaterialProperty().withValue("{}"));
+  }
+
+  @After
+  public void tearDown() {
+    if (scheduler != null) {
+      scheduler.stop();
+    }
+  }
+
+  @Test
+  public void shouldPollRegisteredMaterialsRepeatedly() {
+    scheduler =
+        new PollScheduler(poller, credentialService, new PollerSettings().withPollIntervalMs(20));
+    scheduler.start();
+
+    scheduler.register(packageConfig, repoConfig);
+    scheduler.register(packageConfig, repoConfig);
+
+    verify(poller, timeout(2000).atLeast(3))
+        .refreshLatestImageAsync(packageConfig, repoConfig, "gcr_token");
+    assertThat(scheduler.polledMaterialCount(), equalTo(1));
+  }
+
+  @Test
+  public void shouldStopPollingIdleMaterials() throws InterruptedException {
+    scheduler =
+        new PollScheduler(
+            poller,
+            credentialService,
+            new PollerSettings().withPollIntervalMs(20).withPollIdleTimeoutMs(0));
+    scheduler.start();
+
+    scheduler.register(packageConfig, repoConfig);
+    Thread.sleep(200);
+
+    assertThat(scheduler.polledMaterialCount(), equalTo(0));
+    verify(poller, never())
+        .refreshLatestImageAsync(
+            any(PackageMaterialProperties.class),
+            any(PackageMaterialProperties.class),
+            anyString());
+  }
+
+  @Test
+  public void shouldNotPollWhenIntervalIsNotSet() {
+    scheduler = new PollScheduler(poller, credentialService, new PollerSettings());
+    scheduler.start();
+
+    scheduler.register(packageConfig, repoConfig);
+
+    assertThat(scheduler.polledMaterialCount(), equalTo(0));
+  }
+}
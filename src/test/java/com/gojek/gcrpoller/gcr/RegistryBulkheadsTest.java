@@ -0,0 +1,190 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.gojek.gcrpoller.exception.BulkheadFullException;
+import com.gojek.gcrpoller.exception.PollerException;
+import com.gojek.gcrpoller.exception.RegistryUnavailableException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RegistryBulkheadsTest {
+
+  @Test
+  public void shouldRejectPollsOfFullRegistryWithoutBlockingOtherRegistries() throws Exception {
+    RegistryBulkheads bulkheads = new RegistryBulkheads(1, 0);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread slowPoll =
+        new Thread(
+            () ->
+                bulkheads.call(
+                    "asia.gcr.io",
+                    () -> {
+                      running.countDown();
+                      try {
+                        return release.await(5, TimeUnit.SECONDS);
+                      } catch (InterruptedException e) {
+                        return false;
+                      }
+                    }));
+    slowPoll.start();
+    running.await();
+
+    try {
+      assertThat(bulkheads.call("gcr.io", () -> "polled"), equalTo("polled"));
+      bulkheads.call("asia.gcr.io", () -> "rejected");
+      throw new AssertionError("poll should be rejected while the bulkhead is full");
+    } catch (BulkheadFullException e) {
+      // expected
+    } finally {
+      release.countDown();
+      slowPoll.join();
+    }
+  }
+
+  @Test
+  public void shouldGiveUpOnHangingRegistryWithoutBlockingOtherRegistries() throws Exception {
+    RegistryBulkheads bulkheads = new RegistryBulkheads(1, 0, false, 500);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    AtomicReference<RuntimeException> hangingError = new AtomicReference<>();
+    Thread hangingPoll =
+        new Thread(
+            () -> {
+              try {
+                bulkheads.call(
+                    "asia.gcr.io",
+                    () -> {
+                      running.countDown();
+                      try {
+                        return new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+                      } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        return false;
+                      }
+                    });
+              } catch (RuntimeException e) {
+                hangingError.set(e);
+              }
+            });
+    hangingPoll.start();
+    running.await();
+
+    assertThat(bulkheads.call("gcr.io", () -> "polled"), equalTo("polled"));
+
+    hangingPoll.join();
+    assertThat(hangingError.get() instanceof RegistryUnavailableException, equalTo(true));
+    assertThat(interrupted.await(5, TimeUnit.SECONDS), equalTo(true));
+  }
+
+  @Test
+  public void shouldInterruptPollWhenCallerIsInterrupted() throws Exception {
+    RegistryBulkheads bulkheads = new RegistryBulkheads(1, 0, true);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    Thread caller =
+        new Thread(
+            () -> {
+              try {
+                bulkheads.call(
+                    "gcr.io",
+                    () -> {
+                      running.countDown();
+                      try {
+                        return new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+                      } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        return false;
+                      }
+                    });
+              } catch (PollerException e) {
+                // interrupted while waiting
+              }
+            });
+    caller.start();
+    running.await();
+
+    caller.interrupt();
+
+    assertThat(interrupted.await(5, TimeUnit.SECONDS), equalTo(true));
+    caller.join();
+  }
+
+  @Test
+  public void shouldBoundPollsWithPermitsWhenEachPollGetsItsOwnThread() throws Exception {
+    // stands in for the virtual thread per task executor of JDK 21
+    ExecutorService threadPerTask = Executors.newCachedThreadPool();
+    RegistryBulkheads bulkheads = new RegistryBulkheads(1, 1, threadPerTask, 0);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread slowPoll =
+        new Thread(
+            () ->
+                bulkheads.call(
+                    "gcr.io",
+                    () -> {
+                      running.countDown();
+                      try {
+                        return release.await(5, TimeUnit.SECONDS);
+                      } catch (InterruptedException e) {
+                        return false;
+                      }
+                    }));
+    Thread queuedPoll = new Thread(() -> bulkheads.call("gcr.io", () -> "queued"));
+    slowPoll.start();
+    running.await();
+    queuedPoll.start();
+    while (bulkheads.queuedPolls("gcr.io") == 0) {
+      Thread.sleep(10);
+    }
+
+    try {
+      bulkheads.call("gcr.io", () -> "rejected");
+      throw new AssertionError("poll should be rejected while the bulkhead is full");
+    } catch (BulkheadFullException e) {
+      // expected
+    } finally {
+      release.countDown();
+      slowPoll.join();
+      queuedPoll.join();
+    }
+
+    assertThat(bulkheads.queuedPolls("gcr.io"), equalTo(0));
+    assertThat(bulkheads.call("gcr.io", () -> "polled"), equalTo("polled"));
+    threadPerTask.shutdown();
+  }
+
+  @Test
+  public void shouldPollOnCallingThreadWhenDisabled() {
+    RegistryBulkheads bulkheads = new RegistryBulkheads(0, 0);
+    Thread caller = Thread.currentThread();
+
+    assertThat(bulkheads.call("gcr.io", () -> Thread.currentThread() == caller), equalTo(true));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.gojek.gcrpoller.exception.CircuitOpenException;
+import com.gojek.gcrpoller.gcr.RegistryCircuitBreaker.State;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RegistryCircuitBreakerTest {
+
+  @Test
+  public void shouldOpenWhenFailureRateReachesThreshold() {
+    RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(50, 4, 4, 60000, 1000);
+
+    call(breaker, false, 0);
+    call(breaker, true, 0);
+    call(breaker, false, 0);
+    assertThat(breaker.getState("gcr.io"), equalTo(State.CLOSED));
+    call(breaker, false, 5000);
+
+    assertThat(breaker.getState("gcr.io"), equalTo(State.OPEN));
+    assertThat(breaker.getState("asia.gcr.io"), equalTo(State.CLOSED));
+    assertThat(breaker.getOpenCount(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldRejectRequestsWhileOpen() {
+    RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(50, 1, 1, 60000, 1000);
+    call(breaker, true, 0);
+
+    try {
+      breaker.acquirePermission("gcr.io");
+      throw new AssertionError("request should be rejected");
+    } catch (CircuitOpenException e) {
+      assertThat(breaker.getRejectedCount(), equalTo(1L));
+    }
+  }
+
+  @Test
+  public void shouldCloseAfterSuccessfulTrialRequest() {
+    RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(50, 1, 1, 0, 1000);
+    call(breaker, true, 0);
+
+    breaker.acquirePermission("gcr.io");
+    assertThat(breaker.getState("gcr.io"), equalTo(State.HALF_OPEN));
+    breaker.record("gcr.io", false, 0);
+
+    assertThat(breaker.getState("gcr.io"), equalTo(State.CLOSED));
+    assertThat(breaker.getHalfOpenCount(), equalTo(1L));
+    assertThat(breaker.getCloseCount(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldNeverOpenWhenDisabled() {
+    RegistryCircuitBreaker breaker = new RegistryCircuitBreaker(0, 1, 1, 60000, 1000);
+
+    call(breaker, true, 0);
+    call(breaker, true, 0);
+
+    assertThat(breaker.getState("gcr.io"), equalTo(State.CLOSED));
+  }
+
+  private void call(RegistryCircuitBreaker breaker, boolean failed, long elapsedMs) {
+    breaker.acquirePermission("gcr.io");
+    breaker.record("gcr.io", failed, elapsedMs);
+  }
+}
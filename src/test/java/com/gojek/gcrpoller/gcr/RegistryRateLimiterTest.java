@@ -0,0 +1,85 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.gojek.gcrpoller.exception.PollerException;
+import java.util.Date;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RegistryRateLimiterTest {
+
+  @Test
+  public void shouldLetBurstThroughAndThenWaitForTokens() {
+    RegistryRateLimiter limiter = new RegistryRateLimiter(20, 2, 1000);
+
+    limiter.acquire("gcr.io");
+    limiter.acquire("gcr.io");
+    limiter.acquire("gcr.io");
+    limiter.acquire("asia.gcr.io");
+
+    RegistryRateLimiter.WaitMetrics metrics = limiter.getWaitMetrics().get("gcr.io");
+    assertThat(metrics.getRequests(), equalTo(3L));
+    assertThat(metrics.getWaitedRequests(), equalTo(1L));
+    assertTrue(metrics.getMaxWaitMs() > 0);
+    assertThat(limiter.getWaitMetrics().get("asia.gcr.io").getWaitedRequests(), equalTo(0L));
+  }
+
+  @Test(expected = PollerException.class)
+  public void shouldFailRequestThatWouldWaitTooLong() {
+    RegistryRateLimiter limiter = new RegistryRateLimiter(0.1, 1, 100);
+
+    limiter.acquire("gcr.io");
+    limiter.acquire("gcr.io");
+  }
+
+  @Test(expected = PollerException.class)
+  public void shouldPauseHostThatAsksToRetryLater() {
+    RegistryRateLimiter limiter = new RegistryRateLimiter(0, 1, 100);
+    BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 429, "Too Many");
+    response.addHeader("Retry-After", "60");
+
+    limiter.onResponse("gcr.io", response);
+    limiter.acquire("asia.gcr.io");
+    limiter.acquire("gcr.io");
+  }
+
+  @Test
+  public void shouldParseRetryAfterSecondsAndDates() {
+    assertThat(
+        RegistryRateLimiter.retryAfterMs(new BasicHeader("Retry-After", "2")), equalTo(2000L));
+    assertThat(
+        RegistryRateLimiter.retryAfterMs(new BasicHeader("Retry-After", "soon")), equalTo(0L));
+    assertThat(RegistryRateLimiter.retryAfterMs(null), equalTo(0L));
+
+    String inAMinute = DateUtils.formatDate(new Date(System.currentTimeMillis() + 60000));
+    long retryAfterMs =
+        RegistryRateLimiter.retryAfterMs(new BasicHeader("Retry-After", inAMinute));
+    assertTrue(retryAfterMs > 50000 && retryAfterMs <= 60000);
+  }
+}
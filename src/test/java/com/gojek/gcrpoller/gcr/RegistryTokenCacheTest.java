@@ -0,0 +1,181 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.gojek.gcrpoller.exception.InvalidCredentialException;
+import com.gojek.gcrpoller.gcr.RegistryTokenCache.TokenKey;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RegistryTokenCacheTest {
+
+  private final TokenKey key =
+      new TokenKey("gcr.io", "project", "image", RegistryTokenCache.PULL_SCOPE);
+
+  @Test
+  public void shouldReturnCachedTokenBeforeExpiry() {
+    RegistryTokenCache cache = new RegistryTokenCache();
+    Token token = new Token("3600", Instant.now().toString(), "secret");
+    cache.put(key, token);
+
+    assertThat(cache.get(key), equalTo(token));
+  }
+
+  @Test
+  public void shouldNotCacheTokenExpiringWithinSafetyMargin() {
+    RegistryTokenCache cache = new RegistryTokenCache(10, TimeUnit.MINUTES.toMillis(5));
+    cache.put(key, new Token("120", Instant.now().toString(), "secret"));
+
+    assertThat(cache.get(key), nullValue());
+  }
+
+  @Test
+  public void shouldNotCacheTokenWithoutExpiry() {
+    RegistryTokenCache cache = new RegistryTokenCache();
+    cache.put(key, new Token(null, null, "secret"));
+
+    assertThat(cache.get(key), nullValue());
+  }
+
+  @Test
+  public void shouldComputeExpiryFromIssuedAt() {
+    long receivedAt = Instant.parse("2019-01-01T00:10:00Z").toEpochMilli();
+    Token token = new Token("3600", "2019-01-01T00:00:00Z", "secret");
+
+    assertThat(
+        RegistryTokenCache.expiresAt(token, receivedAt),
+        equalTo(Instant.parse("2019-01-01T01:00:00Z").toEpochMilli()));
+  }
+
+  @Test
+  public void shouldComputeExpiryFromReceivedTimeWhenIssuedAtIsInvalid() {
+    long receivedAt = Instant.parse("2019-01-01T00:10:00Z").toEpochMilli();
+    Token token = new Token("3600", "yesterday", "secret");
+
+    assertThat(
+        RegistryTokenCache.expiresAt(token, receivedAt),
+        equalTo(Instant.parse("2019-01-01T01:10:00Z").toEpochMilli()));
+  }
+
+  @Test
+  public void shouldLoadTokenOnlyWhenNotCached() {
+    RegistryTokenCache cache = new RegistryTokenCache();
+    AtomicInteger loads = new AtomicInteger();
+    Token token = new Token("3600", Instant.now().toString(), "secret");
+
+    Supplier<Token> loader =
+        () -> {
+          loads.incrementAndGet();
+          return token;
+        };
+
+    cache.get(key, loader);
+    Token cached = cache.get(key, loader);
+
+    assertThat(cached, equalTo(token));
+    assertThat(loads.get(), equalTo(1));
+  }
+
+  @Test
+  public void shouldUpdateCachedTokenInPlaceOnHit() {
+    RegistryTokenCache cache = new RegistryTokenCache();
+    Token token = new Token("3600", Instant.now().toString(), "secret");
+    cache.get(key, () -> token);
+    RegistryTokenCache.CachedToken cached = cache.getCache().snapshot().get(key);
+    Supplier<Token> loader = () -> token;
+
+    cache.get(key, loader);
+
+    assertThat(cache.getCache().snapshot().get(key), sameInstance(cached));
+    assertThat(cached.getLoader(), sameInstance(loader));
+  }
+
+  @Test
+  public void shouldRefreshTokensExpiringWithinLeadTime() {
+    RegistryTokenCache cache = new RegistryTokenCache();
+    Instant issuedAt = Instant.now().minus(55, ChronoUnit.MINUTES);
+    Token expiring = new Token("3600", issuedAt.toString(), "old");
+    Token renewed = new Token("3600", Instant.now().toString(), "new");
+    cache.get(key, () -> expiring);
+    cache.get(key, () -> renewed);
+
+    cache.refreshExpiring(TimeUnit.MINUTES.toMillis(10), 0);
+
+    assertThat(cache.get(key), equalTo(renewed));
+  }
+
+  @Test
+  public void shouldNotRefreshTokensOutsideLeadTime() {
+    RegistryTokenCache cache = new RegistryTokenCache();
+    Token token = new Token("3600", Instant.now().toString(), "old");
+    cache.get(key, () -> token);
+    cache.get(key, () -> new Token("3600", Instant.now().toString(), "new"));
+
+    cache.refreshExpiring(TimeUnit.MINUTES.toMillis(10), TimeUnit.MINUTES.toMillis(5));
+
+    assertThat(cache.get(key), equalTo(token));
+  }
+
+  @Test
+  public void shouldDropTokensWhichAreNotRead() throws InterruptedException {
+    RegistryTokenCache cache = new RegistryTokenCache(10, TimeUnit.MINUTES.toMillis(1), 0);
+    AtomicInteger loads = new AtomicInteger();
+    Instant issuedAt = Instant.now().minus(55, ChronoUnit.MINUTES);
+    cache.get(
+        key,
+        () -> {
+          loads.incrementAndGet();
+          return new Token("3600", issuedAt.toString(), "old");
+        });
+    Thread.sleep(5);
+
+    cache.refreshExpiring(TimeUnit.MINUTES.toMillis(10), 0);
+
+    assertThat(cache.getCache().size(), equalTo(0));
+    assertThat(loads.get(), equalTo(1));
+  }
+
+  @Test
+  public void shouldDropExpiredTokensWhichCannotBeRefreshed() throws InterruptedException {
+    RegistryTokenCache cache = new RegistryTokenCache(10, 900);
+    Token token = new Token("1", Instant.now().toString(), "old");
+    cache.get(key, () -> token);
+    Supplier<Token> failing =
+        () -> {
+          throw new InvalidCredentialException("expired access token");
+        };
+    cache.get(key, failing);
+    Thread.sleep(600);
+
+    cache.refreshExpiring(TimeUnit.MINUTES.toMillis(10), 0);
+
+    assertThat(cache.getCache().size(), equalTo(0));
+  }
+}
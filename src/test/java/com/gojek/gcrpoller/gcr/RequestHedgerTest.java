@@ -0,0 +1,216 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RequestHedgerTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private RequestHedger hedger;
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    hedger.close();
+  }
+
+  @Test
+  public void shouldUseHedgedRequestWhenFirstIsSlow() throws IOException, InterruptedException {
+    hedger = new RequestHedger(90, 100, 10);
+    warmUp("gcr.io");
+    AtomicInteger attempts = new AtomicInteger();
+    CountDownLatch aborted = new CountDownLatch(1);
+
+    String result =
+        hedger.call(
+            "gcr.io",
+            attempt -> {
+              if (attempts.incrementAndGet() > 1) {
+                return "hedge";
+              }
+              attempt.onSend(
+                  () -> {
+                    aborted.countDown();
+                    release.countDown();
+                    return true;
+                  });
+              return slow("first");
+            },
+            response -> true);
+
+    assertThat(result, equalTo("hedge"));
+    assertThat(hedger.getHedgeCount(), equalTo(1L));
+    assertThat(aborted.await(5, TimeUnit.SECONDS), equalTo(true));
+  }
+
+  @Test
+  public void shouldNotUseFailedHedge() throws IOException {
+    hedger = new RequestHedger(90, 100, 10);
+    warmUp("gcr.io");
+    AtomicInteger attempts = new AtomicInteger();
+
+    String result =
+        hedger.call(
+            "gcr.io",
+            attempt -> attempts.incrementAndGet() == 1 ? sleep(200, "200") : "503",
+            response -> response.equals("200"));
+
+    assertThat(result, equalTo("200"));
+    assertThat(hedger.getHedgeCount(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldAnswerWithFirstAttemptWhenNeitherSucceeds() throws IOException {
+    hedger = new RequestHedger(90, 100, 10);
+    warmUp("gcr.io");
+    AtomicInteger attempts = new AtomicInteger();
+
+    String result =
+        hedger.call(
+            "gcr.io",
+            attempt -> attempts.incrementAndGet() == 1 ? sleep(100, "502") : "503",
+            response -> response.equals("200"));
+
+    assertThat(result, equalTo("502"));
+  }
+
+  @Test
+  public void shouldKeepLatenciesPerHost() {
+    hedger = new RequestHedger(90, 100, 10);
+    warmUp("gcr.io");
+
+    assertThat(hedger.hedgeDelayMs("gcr.io"), equalTo(10L));
+    assertThat(hedger.hedgeDelayMs("asia.gcr.io"), equalTo(-1L));
+  }
+
+  @Test
+  public void shouldNotHedgeBeyondBudget() throws IOException {
+    hedger = new RequestHedger(90, 0, 10);
+    warmUp("gcr.io");
+    AtomicInteger attempts = new AtomicInteger();
+
+    String result =
+        hedger.call(
+            "gcr.io",
+            attempt -> {
+              attempts.incrementAndGet();
+              return sleep(100, "first");
+            },
+            response -> true);
+
+    assertThat(result, equalTo("first"));
+    assertThat(attempts.get(), equalTo(1));
+    assertThat(hedger.getHedgeCount(), equalTo(0L));
+  }
+
+  @Test
+  public void shouldNotHedgeResponseWhoseHeadersHaveArrived() throws IOException {
+    hedger = new RequestHedger(90, 100, 10);
+    warmUp("gcr.io");
+    AtomicInteger attempts = new AtomicInteger();
+
+    String result =
+        hedger.call(
+            "gcr.io",
+            attempt -> {
+              attempts.incrementAndGet();
+              attempt.onResponse();
+              return sleep(100, "first");
+            },
+            response -> true);
+
+    assertThat(result, equalTo("first"));
+    assertThat(attempts.get(), equalTo(1));
+  }
+
+  @Test
+  public void shouldRecordLatencyUpToResponseHeaders() throws IOException {
+    hedger = new RequestHedger(90, 0, 1);
+    for (int i = 0; i < RequestHedger.MIN_LATENCY_SAMPLES; i++) {
+      hedger.call(
+          "gcr.io",
+          attempt -> {
+            attempt.onResponse();
+            return sleep(20, "read");
+          },
+          response -> true);
+    }
+
+    long delayMs = hedger.hedgeDelayMs("gcr.io");
+    assertTrue("hedge delay was " + delayMs + "ms", delayMs < 20);
+  }
+
+  @Test
+  public void shouldSendFirstAttemptOnCallingThread() throws IOException {
+    hedger = new RequestHedger(90, 100, 10);
+    warmUp("gcr.io");
+    Thread caller = Thread.currentThread();
+
+    assertThat(
+        hedger.call("gcr.io", attempt -> Thread.currentThread() == caller, response -> true),
+        equalTo(true));
+    assertThat(hedger.getHedgeCount(), equalTo(0L));
+  }
+
+  @Test
+  public void shouldSendRequestOnCallingThreadWhenDisabled() throws IOException {
+    hedger = RequestHedger.disabled();
+    Thread caller = Thread.currentThread();
+
+    assertThat(
+        hedger.call("gcr.io", attempt -> Thread.currentThread() == caller, response -> true),
+        equalTo(true));
+  }
+
+  private void warmUp(String host) {
+    for (int i = 0; i < RequestHedger.MIN_LATENCY_SAMPLES; i++) {
+      hedger.recordLatency(host, 1);
+    }
+  }
+
+  private String slow(String result) {
+    try {
+      release.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return result;
+  }
+
+  private static String sleep(long millis, String result) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.gcr;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TagFilterTest {
+
+  private static final List<String> TAGS =
+      Arrays.asList(
+          "",
+          "latest",
+          "release-1.0",
+          "release-1.0-prod",
+          "1.0-prod",
+          "1.0-prod\n",
+          "1.0-prod\r\n",
+          "1.0-prod\nx",
+          "x\nrelease-2",
+          "x\n-prod",
+          "pre-release",
+          "1a0",
+          "1.0");
+
+  @Test
+  public void shouldRecognizeLiteralFilters() {
+    assertKind(".*", TagFilter.Kind.ALL);
+    assertKind("^.*", TagFilter.Kind.ALL);
+    assertKind("", TagFilter.Kind.ALL);
+    assertKind("^release-.*", TagFilter.Kind.PREFIX);
+    assertKind("^release-", TagFilter.Kind.PREFIX);
+    assertKind(".*-prod$", TagFilter.Kind.SUFFIX);
+    assertKind("-prod$", TagFilter.Kind.SUFFIX);
+    assertKind("release", TagFilter.Kind.CONTAINS);
+    assertKind(".*release.*", TagFilter.Kind.CONTAINS);
+    assertKind("1\\.0", TagFilter.Kind.CONTAINS);
+    assertKind("1.0", TagFilter.Kind.REGEX);
+    assertKind("^.*-prod", TagFilter.Kind.REGEX);
+    assertKind("^latest$", TagFilter.Kind.REGEX);
+    assertKind("^.*$", TagFilter.Kind.REGEX);
+    assertKind("1\\.*", TagFilter.Kind.REGEX);
+    assertKind("\\d+", TagFilter.Kind.REGEX);
+  }
+
+  @Test
+  public void shouldMatchLikeRegexFind() {
+    List<String> filters =
+        Arrays.asList(
+            ".*",
+            "^.*",
+            "",
+            "$",
+            ".*$",
+            "^$",
+            "^release-.*",
+            "^release-",
+            ".*-prod$",
+            "-prod$",
+            "release",
+            ".*release.*",
+            "1\\.0",
+            "1.0",
+            "^.*-prod",
+            "^latest$",
+            "^.*$",
+            "prod\\$",
+            "\\d+");
+    for (String filter : filters) {
+      Pattern pattern = Pattern.compile(filter);
+      Predicate<String> matcher = TagFilter.compile(filter).matcher();
+      for (String tag : TAGS) {
+        assertThat(
+            filter + " on " + tag, matcher.test(tag), equalTo(pattern.matcher(tag).find()));
+      }
+    }
+  }
+
+  @Test(expected = PatternSyntaxException.class)
+  public void shouldRejectInvalidRegex() {
+    TagFilter.compile("release-(");
+  }
+
+  private void assertKind(String filter, TagFilter.Kind kind) {
+    assertThat(filter, TagFilter.compile(filter).getKind(), equalTo(kind));
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LruCacheTest {
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+    LruCache<String, String> cache = new LruCache<>(2);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.get("a");
+    cache.put("c", "3");
+
+    assertThat(cache.size(), equalTo(2));
+    assertThat(cache.get("b"), nullValue());
+    assertThat(cache.get("a"), equalTo("1"));
+    assertThat(cache.get("c"), equalTo("3"));
+    assertThat(cache.evictionCount(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldCountHitsAndMisses() {
+    LruCache<String, String> cache = new LruCache<>(2);
+    cache.get("a");
+    cache.put("a", "1");
+    cache.get("a");
+    cache.get("a");
+
+    assertThat(cache.hitCount(), equalTo(2L));
+    assertThat(cache.missCount(), equalTo(1L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNonPositiveSize() {
+    new LruCache<String, String>(0);
+  }
+}
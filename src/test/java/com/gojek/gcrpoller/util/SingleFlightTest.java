@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SingleFlightTest {
+
+  @Test
+  public void shouldShareResultOfInFlightCall() throws Exception {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicReference<String> firstResult = new AtomicReference<>();
+    AtomicReference<String> secondResult = new AtomicReference<>();
+
+    Thread first =
+        new Thread(
+            () ->
+                firstResult.set(
+                    singleFlight.execute(
+                        "key",
+                        () -> {
+                          calls.incrementAndGet();
+                          started.countDown();
+                          awaitUninterruptibly(release);
+                          return "result";
+                        })));
+    first.start();
+    started.await(5, TimeUnit.SECONDS);
+
+    Thread second =
+        new Thread(
+            () ->
+                secondResult.set(
+                    singleFlight.execute(
+                        "key",
+                        () -> {
+                          calls.incrementAndGet();
+                          return "other";
+                        })));
+    second.start();
+    while (second.getState() != Thread.State.WAITING && second.isAlive()) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    first.join(5000);
+    second.join(5000);
+
+    assertThat(firstResult.get(), equalTo("result"));
+    assertThat(secondResult.get(), equalTo("result"));
+    assertThat(calls.get(), equalTo(1));
+  }
+
+  @Test
+  public void shouldRunAgainOnceCallCompleted() {
+    SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+
+    singleFlight.execute("key", calls::incrementAndGet);
+    int result = singleFlight.execute("key", calls::incrementAndGet);
+
+    assertThat(result, equalTo(2));
+    assertThat(singleFlight.inFlightCount(), equalTo(0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldPropagateFailure() {
+    SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    singleFlight.execute(
+        "key",
+        () -> {
+          throw new IllegalStateException("failed");
+        });
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2019 GOJEK
+ *
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.gojek.gcrpoller.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class VirtualThreadsTest {
+
+  @Test
+  public void shouldCreateNamedDaemonThreads() {
+    ThreadFactory factory = VirtualThreads.factory("gcr-poller-test", false);
+
+    Thread thread = factory.newThread(() -> {});
+
+    assertThat(thread.getName(), equalTo("gcr-poller-test"));
+    assertThat(thread.isDaemon(), equalTo(true));
+  }
+
+  @Test
+  public void shouldCreateNamedThreadsWhenVirtualThreadsAreRequested() throws Exception {
+    ThreadFactory factory = VirtualThreads.factory("gcr-poller-test", true);
+    boolean[] ran = new boolean[1];
+
+    Thread thread = factory.newThread(() -> ran[0] = true);
+    thread.start();
+    thread.join();
+
+    assertThat(ran[0], equalTo(true));
+    assertThat(thread.getName(), equalTo("gcr-poller-test"));
+    // virtual threads are always daemon threads, and so are the platform threads used instead
+    assertThat(thread.isDaemon(), equalTo(true));
+  }
+
+  @Test
+  public void shouldRunTasksOnNewThreadsOnlyWhenVirtualThreadsAreSupported() throws Exception {
+    ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("gcr-poller-test");
+
+    assertThat(executor != null, equalTo(VirtualThreads.isSupported()));
+    if (executor != null) {
+      String threadName = executor.submit(() -> Thread.currentThread().getName()).get();
+
+      assertThat(threadName, equalTo("gcr-poller-test"));
+      executor.shutdown();
+      assertThat(executor.awaitTermination(1, TimeUnit.SECONDS), equalTo(true));
+    }
+  }
+}